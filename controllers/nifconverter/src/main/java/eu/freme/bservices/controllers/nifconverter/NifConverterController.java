@@ -2,6 +2,7 @@ package eu.freme.bservices.controllers.nifconverter;
 
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.ModelFactory;
+import eu.freme.bservices.filters.internationalizationfilter.InternationalizationFilter;
 import eu.freme.bservices.internationalization.api.InternationalizationAPI;
 import eu.freme.bservices.internationalization.okapi.nif.converter.ConversionException;
 import eu.freme.common.conversion.rdf.RDFConversionService;
@@ -17,6 +18,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import eu.freme.common.conversion.rdf.RDFConstants;
 
+import javax.servlet.http.HttpServletRequest;
 import java.io.ByteArrayInputStream;
 import java.io.Reader;
 import java.nio.charset.StandardCharsets;
@@ -52,13 +54,18 @@ public class NifConverterController {
             @RequestHeader(value = "Accept") String acceptHeader,
             @RequestHeader(value = "Content-Type") String contentTypeHeader,
             @RequestBody String postBody,
-            @RequestParam Map<String, String> allParams) {
+            @RequestParam Map<String, String> allParams,
+            HttpServletRequest request) {
 
         NIFParameterSet nifParameters =  restHelper.normalizeNif(postBody,
                 acceptHeader, contentTypeHeader, allParams, false);
         try {
             Model model;
-            if(nifParameters.getInformat().equals(RDFConstants.RDFSerialization.PLAINTEXT)){
+            Object handoff = request.getAttribute(InternationalizationFilter.NIF_MODEL_ATTRIBUTE);
+            if(handoff instanceof Model){
+                // the request was converted by the e-Internationalization filter, use its model
+                model = (Model) handoff;
+            }else if(nifParameters.getInformat().equals(RDFConstants.RDFSerialization.PLAINTEXT)){
                 model = ModelFactory.createDefaultModel();
                 rdfConversionService.plaintextToRDF(model, nifParameters.getInput(), null, nifParameterFactory.getDefaultPrefix());
             }else {
@@ -92,6 +92,25 @@ public class NifConverterControllerTest {
         testByteConversionToTURTLE("/data/source_odt.odt", "/data/expected_odt.ttl", "application/x-openoffice");
     }
 
+    @Test
+    public void testModelHandoff() throws Exception {
+        Model handoff = restHelper.convertInputToRDFModel(new NIFParameterSet("Hello handoff!",
+                RDFSerialization.PLAINTEXT, RDFSerialization.TURTLE, restHelper.getDefaultPrefix()));
+        NifModelHandoffTestFilter.setModel(handoff);
+
+        // the body is no valid turtle, so the request only succeeds if the model of the attribute is used
+        HttpResponse<String> response = Unirest.post(url)
+                .header("Content-Type", RDFSerialization.TURTLE.contentType())
+                .header("Accept", RDFSerialization.TURTLE.contentType())
+                .header(NifModelHandoffTestFilter.HEADER, "true")
+                .body("this is not turtle")
+                .asString();
+
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+        Model responseModel = restHelper.unserializeNif(response.getBody(), RDFSerialization.TURTLE);
+        assertTrue(responseModel.isIsomorphicWith(handoff));
+    }
+
     public void testTextConversionToTURTLE(String sourceResource, String expectedResource, String sourceMimeType) throws Exception {
 
         logger.info("CONVERT "+ sourceMimeType + " to turtle");
@@ -0,0 +1,35 @@
+package eu.freme.bservices.controllers.nifconverter;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import eu.freme.bservices.filters.internationalizationfilter.InternationalizationFilter;
+import org.springframework.web.filter.GenericFilterBean;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+
+/**
+ * Stands in for the e-Internationalization filter with enabled model handoff: requests with the header
+ * {@link #HEADER} get the model set by the test as request attribute, the body is passed unchanged.
+ */
+public class NifModelHandoffTestFilter extends GenericFilterBean {
+
+    public static final String HEADER = "X-Test-Nif-Model";
+
+    private static volatile Model model;
+
+    public static void setModel(Model model) {
+        NifModelHandoffTestFilter.model = model;
+    }
+
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain) throws IOException, ServletException {
+        if (req instanceof HttpServletRequest && ((HttpServletRequest) req).getHeader(HEADER) != null) {
+            req.setAttribute(InternationalizationFilter.NIF_MODEL_ATTRIBUTE, model);
+        }
+        chain.doFilter(req, res);
+    }
+}
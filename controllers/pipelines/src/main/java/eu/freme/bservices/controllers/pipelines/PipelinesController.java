@@ -1,14 +1,21 @@
 package eu.freme.bservices.controllers.pipelines;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.ObjectWriter;
-import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.base.Strings;
 import com.google.gson.JsonSyntaxException;
 import com.mashape.unirest.http.exceptions.UnirestException;
+import eu.freme.bservices.controllers.pipelines.core.PipelineJob;
+import eu.freme.bservices.controllers.pipelines.core.PipelineJobService;
 import eu.freme.bservices.controllers.pipelines.core.PipelineResponse;
 import eu.freme.bservices.controllers.pipelines.core.PipelineService;
+import eu.freme.bservices.controllers.pipelines.core.PipelineTemplateCache;
 import eu.freme.bservices.controllers.pipelines.core.ServiceException;
 import eu.freme.bservices.controllers.pipelines.core.WrappedPipelineResponse;
 import eu.freme.bservices.controllers.pipelines.requests.RequestBuilder;
@@ -24,18 +31,32 @@ import eu.freme.common.persistence.model.SerializedRequest;
 import eu.freme.common.rest.BaseRestController;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.access.annotation.Secured;
 import org.springframework.security.authentication.InsufficientAuthenticationException;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
 
 /**
  * Created by Arne Binder (arne.b.binder@gmail.com) on 19.01.2016.
@@ -47,12 +68,42 @@ public class PipelinesController extends BaseRestController {
 
     Logger logger = Logger.getLogger(PipelinesController.class);
 
+    private static final ObjectMapper JSON_MAPPER = new ObjectMapper();
+
+    private static final ObjectReader JSON_READER = JSON_MAPPER.reader();
+
+    private static final ObjectWriter JSON_WRITER = JSON_MAPPER.writer().withDefaultPrettyPrinter();
+
     @Autowired
     PipelineService pipelineAPI;
 
+    @Autowired
+    PipelineJobService jobService;
+
+    @Autowired
+    PipelineTemplateCache templateCache;
+
     @Autowired
     OwnedResourceDAO<Pipeline> entityDAO;
 
+    /**
+     * Number of milliseconds a request for the result of a pipeline job waits for the job to finish.
+     */
+    @Value("${pipelines.jobs.result-timeout:60000}")
+    long resultTimeout;
+
+    /**
+     * Maximum number of documents in a batch.
+     */
+    @Value("${pipelines.batch.max-size:1000}")
+    int maxBatchSize;
+
+    /**
+     * Maximum number of documents of a batch that are executed or waiting to be sent back at the same time.
+     */
+    @Value("${pipelines.batch.in-flight:8}")
+    int batchInFlight;
+
     /**
      * <p>Calls the pipelining service.</p>
      * <p>Some predefined Requests can be formed using the class {@link RequestFactory}. It also converts request objects
@@ -70,48 +121,16 @@ public class PipelinesController extends BaseRestController {
             consumes = "application/json"
     )
     @Secured({"ROLE_USER", "ROLE_ADMIN"})
-    public ResponseEntity<String> pipeline(
+    public ResponseEntity<?> pipeline(
             @RequestBody String requests,
             @RequestParam(value = "stats", defaultValue = "false", required = false) String stats
     ) {
         try {
             boolean wrapResult = Boolean.parseBoolean(stats);
-            ObjectMapper mapper = new ObjectMapper();
-            List<SerializedRequest> serializedRequests = mapper.readValue(requests,
-                    TypeFactory.defaultInstance().constructCollectionType(List.class, eu.freme.common.persistence.model.SerializedRequest.class));
-            //List<SerializedRequest> serializedRequests = //Serializer.fromJson(requests);
-            WrappedPipelineResponse pipelineResult = pipelineAPI.chain(serializedRequests);
-            MultiValueMap<String, String> headers = new HttpHeaders();
-
-            if (wrapResult) {
-                headers.add(HttpHeaders.CONTENT_TYPE, RDFConstants.RDFSerialization.JSON.contentType());
-                ObjectWriter ow = new ObjectMapper().writer()
-                        .withDefaultPrettyPrinter();
-                String serialization = ow.writeValueAsString(pipelineResult);
-                return new ResponseEntity<>(serialization, headers, HttpStatus.OK);
-            } else {
-                headers.add(HttpHeaders.CONTENT_TYPE, pipelineResult.getContent().getContentType());
-                PipelineResponse lastResponse = pipelineResult.getContent();
-                return new ResponseEntity<>(lastResponse.getBody(), headers, HttpStatus.OK);
-            }
-
-        } catch (ServiceException e) {
-            // TODO: see if this can be replaced by exception(s) defined in the broker.
-            logger.error(e.getMessage(), e);
-            MultiValueMap<String, String> headers = new HttpHeaders();
-            headers.add(HttpHeaders.CONTENT_TYPE, e.getResponse().getContentType());
-            return new ResponseEntity<>(e.getMessage(), headers, e.getStatus());
-        } catch (JsonSyntaxException e) {
-            logger.error(e.getMessage(), e);
-            String errormsg = e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
-            throw new BadRequestException("Error detected in the JSON body contents: " + errormsg);
-        } catch (UnirestException | JsonMappingException e) {
-            logger.error(e.getMessage(), e);
-            throw new BadRequestException(e.getMessage());
+            WrappedPipelineResponse pipelineResult = pipelineAPI.chain(parseRequests(requests));
+            return createResponse(pipelineResult, wrapResult);
         } catch (Throwable t) {
-            logger.error(t.getMessage(), t);
-            // throw an Internal Server exception if anything goes really wrong...
-            throw new InternalServerErrorException(t.getMessage());
+            return createErrorResponse(t);
         }
     }
 
@@ -129,7 +148,7 @@ public class PipelinesController extends BaseRestController {
     @RequestMapping(value = "/chain/{id}",
             method = RequestMethod.POST
     )
-    public ResponseEntity<String> pipeline(
+    public ResponseEntity<?> pipeline(
             @RequestBody String body,
             @PathVariable String id,
             @RequestParam (value = "stats", defaultValue = "false", required = false) String stats,
@@ -137,68 +156,390 @@ public class PipelinesController extends BaseRestController {
             @RequestHeader(value = "Content-Type", required = false) String contentTypeHeader,
             @RequestParam Map<String, Object> allParams
     ) throws IOException {
+        List<SerializedRequest> serializedRequests = prepareTemplate(body, id, acceptHeader, contentTypeHeader, allParams);
         try {
-            Pipeline pipeline = entityDAO.findOneByIdentifier(id);
-            List<SerializedRequest> serializedRequests = pipeline.getSerializedRequests();// Serializer.fromJson(pipeline.getSerializedRequests());
-            SerializedRequest firstRequest = serializedRequests.get(0);
-            SerializedRequest lastRequest = serializedRequests.get(serializedRequests.size()-1);
-
-            // normalize internal serialization formats to turtle
-            int i = 0;
-            for(SerializedRequest request: serializedRequests){
-                // set internal informats
-                if(i>0){
-                    request.removeHeader("content-type");
-                    request.removeParameter("informat");
-                    request.addHeader("Content-Type", "text/turtle");
+            boolean wrapResult = Boolean.parseBoolean(stats);
+            WrappedPipelineResponse pipelineResult = pipelineAPI.chain(serializedRequests, id);
+            return createResponse(pipelineResult, wrapResult);
+        } catch (Throwable t) {
+            return createErrorResponse(t);
+        }
+    }
+
+    /**
+     * Starts a pipeline in the background and returns the job executing it right away. The state of the job can be
+     * polled at {@code /pipelining/jobs/{jobId}}, its result is fetched from {@code /pipelining/jobs/{jobId}/result}.
+     * @param requests	The requests to send to the service.
+     * @return			The job executing the pipeline, with status 202 (Accepted).
+     * @throws BadRequestException				The contents of the request is not valid.
+     * @throws InternalServerErrorException		Something goes wrong that shouldn't go wrong.
+     */
+    @RequestMapping(value = "/chain/async",
+            method = RequestMethod.POST,
+            consumes = "application/json"
+    )
+    @Secured({"ROLE_USER", "ROLE_ADMIN"})
+    public ResponseEntity<?> pipelineAsync(
+            @RequestBody String requests
+    ) {
+        try {
+            return createJobResponse(jobService.submit(parseRequests(requests), null, currentUser()), HttpStatus.ACCEPTED);
+        } catch (Throwable t) {
+            return createErrorResponse(t);
+        }
+    }
+
+    /**
+     * Starts a pipeline template in the background and returns the job executing it right away.
+     * @param body	The contents to send to the pipeline. This can be a NIF or plain text document.
+     * @param id	The id of the pipeline template to use.
+     * @return		The job executing the pipeline, with status 202 (Accepted).
+     * @throws AccessDeniedException			The pipeline template is not visible by the current user.
+     * @throws BadRequestException				The contents of the request is not valid.
+     * @throws InternalServerErrorException		Something goes wrong that shouldn't go wrong.
+     * @throws TemplateNotFoundException		The pipeline template does not exist.
+     */
+    @RequestMapping(value = "/chain/{id}/async",
+            method = RequestMethod.POST
+    )
+    public ResponseEntity<?> pipelineAsync(
+            @RequestBody String body,
+            @PathVariable String id,
+            @RequestHeader(value = "Accept", required = false) String acceptHeader,
+            @RequestHeader(value = "Content-Type", required = false) String contentTypeHeader,
+            @RequestParam Map<String, Object> allParams
+    ) throws IOException {
+        List<SerializedRequest> serializedRequests = prepareTemplate(body, id, acceptHeader, contentTypeHeader, allParams);
+        try {
+            return createJobResponse(jobService.submit(serializedRequests, id, currentUser()), HttpStatus.ACCEPTED);
+        } catch (Throwable t) {
+            return createErrorResponse(t);
+        }
+    }
+
+    /**
+     * Runs a pipeline template over many documents. The documents are sent as NDJSON: one JSON object per line, with
+     * the document in the field {@code body} and an optional {@code id}. The documents are processed on the worker
+     * pool of the pipeline jobs, a few at a time, and the results are streamed back as NDJSON in the order they
+     * finish. A document is only started when the result of an earlier one has been sent, and the remaining documents
+     * are dropped when the client goes away. Each result
+     * has the index and id of the document, the HTTP status, the content type and body of the response, and the
+     * timings of the pipeline. Failed documents have the status and message of the error instead.
+     * @param documents	The documents, one JSON object per line.
+     * @param id		The id of the pipeline template to use.
+     * @return			The results, one JSON object per line.
+     * @throws AccessDeniedException			The pipeline template is not visible by the current user.
+     * @throws BadRequestException				The documents are not valid.
+     * @throws TemplateNotFoundException		The pipeline template does not exist.
+     */
+    @RequestMapping(value = "/chain/{id}/batch",
+            method = RequestMethod.POST
+    )
+    public ResponseEntity<StreamingResponseBody> pipelineBatch(
+            @RequestBody String documents,
+            @PathVariable String id,
+            @RequestHeader(value = "Accept", required = false) String acceptHeader,
+            @RequestParam Map<String, Object> allParams
+    ) throws IOException {
+        List<JsonNode> batch = new ArrayList<>();
+        for (String line : documents.split("\\r?\\n")) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                batch.add(JSON_READER.readTree(line));
+            } catch (IOException e) {
+                throw new BadRequestException("Document " + batch.size() + " is not valid JSON: " + e.getMessage());
+            }
+        }
+        if (batch.size() > maxBatchSize) {
+            throw new BadRequestException("A batch may contain at most " + maxBatchSize + " documents.");
+        }
+
+        // the template is loaded once for all documents; the format of the documents is given by informat
+        final Pipeline pipeline = findTemplate(id);
+        final int count = batch.size();
+        StreamingResponseBody stream = out -> {
+            // at most batchInFlight documents are running or have a result waiting in the queue
+            final BlockingQueue<String> results = new LinkedBlockingQueue<>();
+            final List<CompletableFuture<WrappedPipelineResponse>> running = new ArrayList<>();
+            int submitted = 0;
+            int written = 0;
+            try {
+                while (written < count) {
+                    while (submitted < count && submitted - written < batchInFlight) {
+                        running.add(executeBatchDocument(pipeline, id, batch.get(submitted), submitted, acceptHeader, allParams, results));
+                        submitted++;
+                    }
+                    out.write(results.take().getBytes(StandardCharsets.UTF_8));
+                    out.write('\n');
+                    out.flush();
+                    written++;
                 }
-                // set internal outformats
-                if(i<serializedRequests.size()-1){
-                    request.removeHeader("accept");
-                    request.removeParameter("outformat");
-                    request.addHeader("Accept", "text/turtle");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the results of the batch");
+            } finally {
+                if (written < count) {
+                    // the client went away; pipelines still waiting for a thread are not started
+                    for (CompletableFuture<WrappedPipelineResponse> future : running) {
+                        future.cancel(false);
+                    }
+                }
+            }
+        };
+        MultiValueMap<String, String> headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_TYPE, "application/x-ndjson");
+        return new ResponseEntity<>(stream, headers, HttpStatus.OK);
+    }
+
+    /**
+     * Returns the state of a pipeline job.
+     * @param jobId	The id of the job.
+     * @return		The job, or status 404 (Not Found) if there is no such job.
+     * @throws AccessDeniedException	The job was submitted by another user.
+     */
+    @RequestMapping(value = "/jobs/{jobId}",
+            method = RequestMethod.GET
+    )
+    public ResponseEntity<?> getJob(
+            @PathVariable String jobId
+    ) throws JsonProcessingException {
+        PipelineJob job = jobService.getJob(jobId);
+        if (job == null) {
+            return createJobNotFoundResponse(jobId);
+        }
+        checkVisible(job);
+        return createJobResponse(job, HttpStatus.OK);
+    }
+
+    /**
+     * Returns the result of a pipeline job. The request is answered as soon as the pipeline finishes, without
+     * holding a servlet thread while waiting. If the job is still running after the configured timeout, the state
+     * of the job is returned with status 202 (Accepted) and the result can be requested again.
+     * @param jobId	The id of the job.
+     * @param stats	If "true": wrap the response of the last request and add timing statistics.
+     * @return		The response of the last request, as for {@code /pipelining/chain}.
+     * @throws AccessDeniedException	The job was submitted by another user.
+     */
+    @RequestMapping(value = "/jobs/{jobId}/result",
+            method = RequestMethod.GET
+    )
+    public DeferredResult<ResponseEntity<?>> getJobResult(
+            @PathVariable String jobId,
+            @RequestParam(value = "stats", defaultValue = "false", required = false) String stats
+    ) throws JsonProcessingException {
+        final PipelineJob job = jobService.getJob(jobId);
+        final DeferredResult<ResponseEntity<?>> deferredResult;
+        if (job == null) {
+            deferredResult = new DeferredResult<>();
+            deferredResult.setResult(createJobNotFoundResponse(jobId));
+            return deferredResult;
+        }
+        checkVisible(job);
+        deferredResult = new DeferredResult<>(resultTimeout, createJobResponse(job, HttpStatus.ACCEPTED));
+        final boolean wrapResult = Boolean.parseBoolean(stats);
+        job.getResult().whenComplete((pipelineResult, error) -> {
+            try {
+                if (error != null) {
+                    deferredResult.setResult(createErrorResponse(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error));
+                } else {
+                    deferredResult.setResult(createResponse(pipelineResult, wrapResult));
                 }
-                i++;
+            } catch (Exception e) {
+                // handled by the exception handlers of the broker
+                deferredResult.setErrorResult(e);
             }
+        });
+        return deferredResult;
+    }
+
+    private String currentUser() {
+        return PipelineJob.getUserName(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    private void checkVisible(PipelineJob job) {
+        if (!job.isVisibleTo(SecurityContextHolder.getContext().getAuthentication())) {
+            throw new AccessDeniedException("The pipeline job " + job.getId() + " belongs to another user.");
+        }
+    }
 
-            // process parameter outformat / accept header
-            if(allParams.containsKey("outformat")){
-                lastRequest.addParameter("outformat", allParams.get("outformat"));
-                // remove outformat (allParams will be added to first request)
-                allParams.remove("outformat");
-            } else if(!Strings.isNullOrEmpty(acceptHeader) && !acceptHeader.equals("*/*")){
-                lastRequest.addHeader("accept", acceptHeader);
-                lastRequest.addHeader("Accept", acceptHeader);
+    private List<SerializedRequest> parseRequests(String requests) throws IOException {
+        return SerializedRequest.LIST_READER.readValue(requests);
+    }
+
+    private ResponseEntity<?> createResponse(WrappedPipelineResponse pipelineResult, boolean wrapResult) throws JsonProcessingException {
+        MultiValueMap<String, String> headers = new HttpHeaders();
+
+        if (wrapResult) {
+            // read the last response completely, so that its transfer is part of the statistics
+            pipelineResult.getContent().buffer();
+            headers.add(HttpHeaders.CONTENT_TYPE, RDFConstants.RDFSerialization.JSON.contentType());
+            String serialization = JSON_WRITER.writeValueAsString(pipelineResult);
+            return new ResponseEntity<>(serialization, headers, HttpStatus.OK);
+        } else {
+            headers.add(HttpHeaders.CONTENT_TYPE, pipelineResult.getContent().getContentType());
+            PipelineResponse lastResponse = pipelineResult.getContent();
+            // stream the response of the last service to the client
+            InputStream body = lastResponse.getBodyStream();
+            if (body == null) {
+                return new ResponseEntity<>(headers, HttpStatus.OK);
             }
+            return new ResponseEntity<>(new InputStreamResource(body), headers, HttpStatus.OK);
+        }
+    }
+
+    private ResponseEntity<?> createErrorResponse(Throwable error) {
+        if (error instanceof ServiceException) {
+            // TODO: see if this can be replaced by exception(s) defined in the broker.
+            ServiceException e = (ServiceException) error;
+            logger.error(e.getMessage(), e);
+            MultiValueMap<String, String> headers = new HttpHeaders();
+            headers.add(HttpHeaders.CONTENT_TYPE, e.getResponse().getContentType());
+            return new ResponseEntity<>(e.getMessage(), headers, e.getStatus());
+        } else if (error instanceof JsonSyntaxException) {
+            logger.error(error.getMessage(), error);
+            String errormsg = error.getCause() != null ? error.getCause().getMessage() : error.getMessage();
+            throw new BadRequestException("Error detected in the JSON body contents: " + errormsg);
+        } else if (error instanceof UnirestException || error instanceof JsonMappingException) {
+            logger.error(error.getMessage(), error);
+            throw new BadRequestException(error.getMessage());
+        } else if (error instanceof BadRequestException) {
+            logger.error(error.getMessage(), error);
+            throw (BadRequestException) error;
+        }
+        logger.error(error.getMessage(), error);
+        // throw an Internal Server exception if anything goes really wrong...
+        throw new InternalServerErrorException(error.getMessage());
+    }
 
-            // process content-type header (parameter informat will be added via allParams)
-            if(!Strings.isNullOrEmpty(contentTypeHeader) && !contentTypeHeader.equals("*/*")){
-                firstRequest.addHeader("content-type", contentTypeHeader);
-                firstRequest.addHeader("Content-Type", contentTypeHeader);
+    private String createBatchResult(int index, String id, WrappedPipelineResponse pipelineResult, Throwable error, long time) {
+        ObjectNode result = JsonNodeFactory.instance.objectNode();
+        result.put("index", index);
+        if (id != null) {
+            result.put("id", id);
+        }
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause == null) {
+            result.put("status", HttpStatus.OK.value());
+            result.put("contentType", pipelineResult.getContent().getContentType());
+            result.put("body", pipelineResult.getContent().getBody());
+            result.put("totalExecutionTime", pipelineResult.getMetadata().getTotalExecutionTime());
+            result.set("executionTime", JSON_MAPPER.valueToTree(pipelineResult.getMetadata().getExecutionTime()));
+            result.set("steps", JSON_MAPPER.valueToTree(pipelineResult.getMetadata().getSteps()));
+        } else {
+            HttpStatus status;
+            if (cause instanceof ServiceException) {
+                status = ((ServiceException) cause).getStatus();
+            } else if (cause instanceof UnirestException || cause instanceof BadRequestException) {
+                status = HttpStatus.BAD_REQUEST;
+            } else {
+                status = HttpStatus.INTERNAL_SERVER_ERROR;
             }
-            // remove for first request
-            allParams.remove(stats);
-            // add all remaining / modified parameters to the first request
-            firstRequest.addParameters(allParams);
-
-            // add request body to first pipeline request
-            firstRequest.setBody(body);
-
-            // use pipeline object to get the deserialized requests
-            pipeline.setSerializedRequests(serializedRequests);
-            pipeline.serializeRequests();
-            return pipeline(pipeline.getRequests(), stats);
+            logger.error("Document " + index + " of batch failed: " + cause.getMessage(), cause);
+            result.put("status", status.value());
+            result.put("error", cause.getMessage());
+            result.put("totalExecutionTime", time);
+        }
+        try {
+            return JSON_MAPPER.writeValueAsString(result);
+        } catch (JsonProcessingException e) {
+            // the stream waits for a result of every document
+            logger.error(e.getMessage(), e);
+            return "{\"index\":" + index + ",\"status\":" + HttpStatus.INTERNAL_SERVER_ERROR.value() + "}";
+        }
+    }
+
+    /**
+     * Starts the pipeline of one document of a batch. Its result is added to the queue when the pipeline finishes.
+     */
+    private CompletableFuture<WrappedPipelineResponse> executeBatchDocument(Pipeline pipeline, String id, JsonNode document, final int index,
+                                                                            String acceptHeader, Map<String, Object> allParams,
+                                                                            final BlockingQueue<String> results) {
+        final String documentId = document.hasNonNull("id") ? document.get("id").asText() : null;
+        String body = document.isTextual() ? document.asText() : (document.hasNonNull("body") ? document.get("body").asText() : null);
+        final long start = System.currentTimeMillis();
+        CompletableFuture<WrappedPipelineResponse> future;
+        try {
+            future = jobService.execute(fillTemplate(pipeline, body, acceptHeader, null, allParams), id);
+        } catch (Exception e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        future.whenComplete((pipelineResult, error) ->
+                results.add(createBatchResult(index, documentId, pipelineResult, error, System.currentTimeMillis() - start)));
+        return future;
+    }
+
+    private ResponseEntity<?> createJobResponse(PipelineJob job, HttpStatus status) throws JsonProcessingException {
+        MultiValueMap<String, String> headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_TYPE, RDFConstants.RDFSerialization.JSON.contentType());
+        headers.add(HttpHeaders.LOCATION, "/pipelining/jobs/" + job.getId());
+        String serialization = JSON_WRITER.writeValueAsString(job);
+        return new ResponseEntity<>(serialization, headers, status);
+    }
+
+    private ResponseEntity<?> createJobNotFoundResponse(String jobId) {
+        MultiValueMap<String, String> headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_TYPE, RDFConstants.RDFSerialization.PLAINTEXT.contentType());
+        return new ResponseEntity<>("Could not find the pipeline job with id " + jobId, headers, HttpStatus.NOT_FOUND);
+    }
+
+    /**
+     * Fills a pipeline template with the contents and parameters of a request.
+     * @return	The requests to execute.
+     */
+    private List<SerializedRequest> prepareTemplate(String body, String id, String acceptHeader, String contentTypeHeader,
+                                   Map<String, Object> allParams) throws IOException {
+        return fillTemplate(findTemplate(id), body, acceptHeader, contentTypeHeader, allParams);
+    }
+
+    private Pipeline findTemplate(String id) {
+        try {
+            return entityDAO.findOneByIdentifier(id);
         } catch (org.springframework.security.access.AccessDeniedException | InsufficientAuthenticationException ex) {
             logger.error(ex.getMessage(), ex);
             throw new AccessDeniedException(ex.getMessage());
-        } catch (JsonSyntaxException jsonException) {
-            logger.error(jsonException.getMessage(), jsonException);
-            String errormsg = jsonException.getCause() != null ? jsonException.getCause().getMessage() : jsonException.getMessage();
-            throw new BadRequestException("Error detected in the JSON body contents: " + errormsg);
         } catch (OwnedResourceNotFoundException ex) {
             logger.error(ex.getMessage(), ex);
             throw new TemplateNotFoundException("Could not find the pipeline template with id " + id);
         }
     }
 
+    /**
+     * Fills a pipeline template with the contents and parameters of a request. The given parameters are not changed,
+     * so a template can be filled several times with the same parameters.
+     * @return	The requests to execute.
+     */
+    private List<SerializedRequest> fillTemplate(Pipeline pipeline, String body, String acceptHeader, String contentTypeHeader,
+                                                 Map<String, Object> allParams) throws IOException {
+        Map<String, Object> parameters = new HashMap<>(allParams);
+        // copies of the compiled template requests, with internal formats normalized to turtle
+        List<SerializedRequest> serializedRequests = templateCache.instantiate(pipeline);
+        SerializedRequest firstRequest = serializedRequests.get(0);
+        SerializedRequest lastRequest = serializedRequests.get(serializedRequests.size()-1);
+
+        // process parameter outformat / accept header
+        if(parameters.containsKey("outformat")){
+            lastRequest.addParameter("outformat", parameters.get("outformat"));
+            // remove outformat (parameters will be added to first request)
+            parameters.remove("outformat");
+        } else if(!Strings.isNullOrEmpty(acceptHeader) && !acceptHeader.equals("*/*")){
+            lastRequest.addHeader("accept", acceptHeader);
+        }
+
+        // process content-type header (parameter informat will be added via parameters)
+        if(!Strings.isNullOrEmpty(contentTypeHeader) && !contentTypeHeader.equals("*/*")){
+            firstRequest.addHeader("content-type", contentTypeHeader);
+        }
+        // stats is a parameter of the pipeline, not of the first request
+        parameters.remove("stats");
+        // add all remaining / modified parameters to the first request
+        firstRequest.addParameters(parameters);
+
+        // add request body to first pipeline request
+        firstRequest.setBody(body);
+        return serializedRequests;
+    }
+
 }
@@ -1,11 +1,14 @@
 package eu.freme.bservices.controllers.pipelines;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.google.common.base.Strings;
+import eu.freme.bservices.controllers.pipelines.core.PipelineTemplateCache;
 import eu.freme.common.exception.BadRequestException;
 import eu.freme.common.persistence.model.Pipeline;
 import eu.freme.common.rest.OwnedResourceManagingController;
 import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
 import java.io.IOException;
@@ -21,6 +24,11 @@ public class PipelinesManagingController extends OwnedResourceManagingController
 
     Logger logger = Logger.getLogger(PipelinesManagingController.class);
 
+    private static final ObjectReader PIPELINE_READER = new ObjectMapper().readerFor(Pipeline.class);
+
+    @Autowired
+    PipelineTemplateCache templateCache;
+
 
     @Override
     protected Pipeline createEntity(String body, Map<String, String> parameters, Map<String, String> headers) throws BadRequestException {
@@ -30,8 +38,7 @@ public class PipelinesManagingController extends OwnedResourceManagingController
         boolean toPersist = Boolean.parseBoolean(parameters.getOrDefault("persist","false"));
         try {
             // the body contains the label, the description and the serializedRequests
-            ObjectMapper mapper = new ObjectMapper();
-            Pipeline pipeline = mapper.readValue(body, Pipeline.class);
+            Pipeline pipeline = PIPELINE_READER.readValue(body);
             pipeline.setPersist(toPersist);
             //pipeline.setOwnerToCurrentUser();
             return pipeline;
@@ -49,14 +56,15 @@ public class PipelinesManagingController extends OwnedResourceManagingController
         if(!Strings.isNullOrEmpty(body) && !body.trim().isEmpty() && !body.trim().toLowerCase().equals("null") && !body.trim().toLowerCase().equals("empty")){
             try {
                 // create temp pipeline to get mapped content
-                ObjectMapper mapper = new ObjectMapper();
-                Pipeline newPipeline = mapper.readValue(body, Pipeline.class);
+                Pipeline newPipeline = PIPELINE_READER.readValue(body);
                 if(!newPipeline.getLabel().equals(pipeline.getLabel()))
                     pipeline.setLabel(newPipeline.getLabel());
                 if(!newPipeline.getDescription().equals(pipeline.getDescription()))
                     pipeline.setDescription(newPipeline.getDescription());
-                if(!newPipeline.getSerializedRequests().equals(pipeline.getSerializedRequests()))
+                if(!newPipeline.getSerializedRequests().equals(pipeline.getSerializedRequests())) {
                     pipeline.setSerializedRequests(newPipeline.getSerializedRequests());
+                    templateCache.invalidate(pipeline.getId());
+                }
             } catch (IOException e) {
                 throw new BadRequestException("could not update pipeline template with \""+body+"\": "+e.getMessage());
             }
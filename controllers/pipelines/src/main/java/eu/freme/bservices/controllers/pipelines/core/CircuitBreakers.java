@@ -0,0 +1,190 @@
+/**
+ * Copyright (C) 2015 Agro-Know, Deutsches Forschungszentrum für Künstliche Intelligenz, iMinds,
+ * Institut für Angewandte Informatik e. V. an der Universität Leipzig,
+ * Istituto Superiore Mario Boella, Tilde, Vistatec, WRIPL (http://freme-project.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.freme.bservices.controllers.pipelines.core;
+
+import eu.freme.common.conversion.rdf.RDFConstants;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One circuit breaker per service endpoint. After a number of consecutive failures the breaker of an endpoint opens:
+ * requests to the endpoint fail immediately instead of waiting for a service that is down. After some time a single
+ * request is let through again; if it succeeds the breaker closes, otherwise it stays open. Once the limit of endpoints
+ * is reached, requests to new endpoints are not guarded.
+ */
+@Component
+public class CircuitBreakers {
+	private final static Logger logger = Logger.getLogger(CircuitBreakers.class);
+
+	public enum State {CLOSED, OPEN, HALF_OPEN}
+
+	@Value("${pipelines.circuit-breaker.enabled:true}")
+	private boolean enabled;
+
+	/**
+	 * Number of consecutive failures after which the breaker opens.
+	 */
+	@Value("${pipelines.circuit-breaker.failure-threshold:5}")
+	private int failureThreshold;
+
+	/**
+	 * Time in milliseconds the breaker stays open before a trial request is let through.
+	 */
+	@Value("${pipelines.circuit-breaker.open-time:30000}")
+	private long openTime;
+
+	/**
+	 * Maximum number of endpoints with a breaker. The endpoints are chosen by the callers, so they are not trusted to
+	 * stay few.
+	 */
+	@Value("${pipelines.circuit-breaker.max-endpoints:1000}")
+	private int maxEndpoints;
+
+	private final ConcurrentMap<String, Breaker> breakers = new ConcurrentHashMap<>();
+
+	/**
+	 * Checks whether a request may be sent to an endpoint. Every allowed request has to be followed by a call to
+	 * {@link #success(String)} or {@link #failure(String)}.
+	 * @param endpoint	The endpoint of the request.
+	 * @throws ServiceException	with status 503 if the breaker of the endpoint is open.
+	 */
+	public void allow(String endpoint) throws ServiceException {
+		if (!tryAllow(endpoint)) {
+			throw new ServiceException(new PipelineResponse("The service \"" + endpoint + "\" failed repeatedly and is not called for now. Try again later.",
+					RDFConstants.RDFSerialization.PLAINTEXT.contentType()), HttpStatus.SERVICE_UNAVAILABLE);
+		}
+	}
+
+	/**
+	 * Like {@link #allow(String)}, but returns false instead of throwing an exception.
+	 */
+	public boolean tryAllow(String endpoint) {
+		Breaker breaker = breaker(endpoint);
+		return breaker == null || breaker.allow(System.nanoTime());
+	}
+
+	/**
+	 * Records that the endpoint answered a request.
+	 */
+	public void success(String endpoint) {
+		Breaker breaker = breaker(endpoint);
+		if (breaker != null) {
+			breaker.success();
+		}
+	}
+
+	/**
+	 * Records that a request to the endpoint failed: no connection, a timeout or a 5xx response.
+	 */
+	public void failure(String endpoint) {
+		Breaker breaker = breaker(endpoint);
+		if (breaker != null && breaker.failure(System.nanoTime())) {
+			logger.warn("Circuit breaker opened for " + endpoint);
+		}
+	}
+
+	public State getState(String endpoint) {
+		Breaker breaker = breakers.get(endpoint);
+		return breaker != null ? breaker.getState() : State.CLOSED;
+	}
+
+	public Map<String, State> getStates() {
+		Map<String, State> states = new ConcurrentHashMap<>();
+		for (Map.Entry<String, Breaker> breaker : breakers.entrySet()) {
+			states.put(breaker.getKey(), breaker.getValue().getState());
+		}
+		return Collections.unmodifiableMap(states);
+	}
+
+	/**
+	 * @return the breaker of the endpoint, or {@code null} if breakers are disabled or there are too many endpoints
+	 */
+	private Breaker breaker(String endpoint) {
+		if (!enabled) {
+			return null;
+		}
+		Breaker breaker = breakers.get(endpoint);
+		if (breaker == null) {
+			// concurrent requests may exceed the limit by a few breakers
+			if (breakers.size() >= maxEndpoints) {
+				return null;
+			}
+			breaker = breakers.computeIfAbsent(endpoint, e -> new Breaker());
+		}
+		return breaker;
+	}
+
+	private class Breaker {
+		private State state = State.CLOSED;
+		private int failures;
+		private long openedAt;
+
+		synchronized boolean allow(long now) {
+			switch (state) {
+				case CLOSED:
+					return true;
+				case OPEN:
+					if (now - openedAt >= TimeUnit.MILLISECONDS.toNanos(openTime)) {
+						// let a single trial request through
+						state = State.HALF_OPEN;
+						openedAt = now;
+						return true;
+					}
+					return false;
+				default:
+					if (now - openedAt >= TimeUnit.MILLISECONDS.toNanos(openTime)) {
+						// the trial request never reported back, e.g. because it was cancelled: let another one through
+						openedAt = now;
+						return true;
+					}
+					return false;
+			}
+		}
+
+		synchronized void success() {
+			state = State.CLOSED;
+			failures = 0;
+		}
+
+		/**
+		 * @return true if the breaker opened because of this failure
+		 */
+		synchronized boolean failure(long now) {
+			failures++;
+			if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= failureThreshold)) {
+				boolean opened = state == State.CLOSED;
+				state = State.OPEN;
+				openedAt = now;
+				return opened;
+			}
+			return false;
+		}
+
+		synchronized State getState() {
+			return state;
+		}
+	}
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2015 Agro-Know, Deutsches Forschungszentrum für Künstliche Intelligenz, iMinds,
+ * Institut für Angewandte Informatik e. V. an der Universität Leipzig,
+ * Istituto Superiore Mario Boella, Tilde, Vistatec, WRIPL (http://freme-project.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.freme.bservices.controllers.pipelines.core;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.LongConsumer;
+
+/**
+ * Counts the bytes read from a stream and measures the time until the stream is read completely or closed.
+ */
+class MeasuringInputStream extends FilterInputStream {
+	private final LongConsumer bytesRead;
+	private final LongConsumer finished;
+	private final long start;
+	private boolean ended = false;
+
+	/**
+	 * @param in			The stream to measure.
+	 * @param bytesRead		Receives the number of bytes of each read.
+	 * @param finished		Receives the nanoseconds from the creation of this stream until its end. Can be {@code null}.
+	 */
+	MeasuringInputStream(InputStream in, LongConsumer bytesRead, LongConsumer finished) {
+		super(in);
+		this.bytesRead = bytesRead;
+		this.finished = finished;
+		this.start = System.nanoTime();
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = super.read();
+		if (b < 0) {
+			end();
+		} else {
+			bytesRead.accept(1);
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int n = super.read(b, off, len);
+		if (n < 0) {
+			end();
+		} else {
+			bytesRead.accept(n);
+		}
+		return n;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = super.skip(n);
+		bytesRead.accept(skipped);
+		return skipped;
+	}
+
+	@Override
+	public void close() throws IOException {
+		end();
+		super.close();
+	}
+
+	private void end() {
+		if (!ended) {
+			ended = true;
+			if (finished != null) {
+				finished.accept(System.nanoTime() - start);
+			}
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package eu.freme.bservices.controllers.pipelines.core;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -12,9 +14,52 @@ import java.util.Map;
 public class Metadata {
 	private final Map<String, Long> executionTime;
 	private final long totalExecutionTime;
+	private final List<StepStatistics> steps;
+	private final long htmlToNifTime;
+	private final long nifToHtmlTime;
 
 	public Metadata(Map<String, Long> executionTime, long totalExecutionTime) {
+		this(executionTime, totalExecutionTime, Collections.<StepStatistics>emptyList(), 0, 0);
+	}
+
+	/**
+	 * @param executionTime			Execution time in milliseconds per endpoint.
+	 * @param totalExecutionTime	Execution time of the pipeline in milliseconds.
+	 * @param steps					Statistics per step, in the order of the requests.
+	 * @param htmlToNifTime			Nanoseconds spent converting HTML input to NIF, 0 if not converted.
+	 * @param nifToHtmlTime			Nanoseconds spent converting the NIF result back to HTML, 0 if not converted.
+	 */
+	public Metadata(Map<String, Long> executionTime, long totalExecutionTime, List<StepStatistics> steps,
+					long htmlToNifTime, long nifToHtmlTime) {
 		this.executionTime = executionTime;
 		this.totalExecutionTime = totalExecutionTime;
+		this.steps = steps;
+		this.htmlToNifTime = htmlToNifTime;
+		this.nifToHtmlTime = nifToHtmlTime;
+	}
+
+	@SuppressWarnings("unused")
+	public Map<String, Long> getExecutionTime() {
+		return executionTime;
+	}
+
+	@SuppressWarnings("unused")
+	public long getTotalExecutionTime() {
+		return totalExecutionTime;
+	}
+
+	@SuppressWarnings("unused")
+	public List<StepStatistics> getSteps() {
+		return steps;
+	}
+
+	@SuppressWarnings("unused")
+	public long getHtmlToNifTime() {
+		return htmlToNifTime;
+	}
+
+	@SuppressWarnings("unused")
+	public long getNifToHtmlTime() {
+		return nifToHtmlTime;
 	}
 }
@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2015 Agro-Know, Deutsches Forschungszentrum für Künstliche Intelligenz, iMinds,
+ * Institut für Angewandte Informatik e. V. an der Universität Leipzig,
+ * Istituto Superiore Mario Boella, Tilde, Vistatec, WRIPL (http://freme-project.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.freme.bservices.controllers.pipelines.core;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A pipeline that is executed in the background. Its result can be polled or waited for with the id of the job.
+ */
+public class PipelineJob {
+
+	public enum Status {
+		RUNNING, DONE, FAILED
+	}
+
+	private final String id;
+	private final String owner;
+	private final long creationTime;
+	private volatile long completionTime;
+	private final CompletableFuture<WrappedPipelineResponse> result;
+
+	/**
+	 * @param id		The id of the job.
+	 * @param owner		The name of the user who submitted the job, {@code null} if anonymous.
+	 * @param result	The result of the pipeline.
+	 */
+	public PipelineJob(String id, String owner, CompletableFuture<WrappedPipelineResponse> result) {
+		this.id = id;
+		this.owner = owner;
+		this.creationTime = System.currentTimeMillis();
+		this.result = result;
+		result.whenComplete((response, error) -> completionTime = System.currentTimeMillis());
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public Status getStatus() {
+		if (!result.isDone()) {
+			return Status.RUNNING;
+		}
+		return result.isCompletedExceptionally() ? Status.FAILED : Status.DONE;
+	}
+
+	/**
+	 * Returns the name of the user who submitted the job, or {@code null} if it was submitted anonymously.
+	 */
+	@JsonIgnore
+	public String getOwner() {
+		return owner;
+	}
+
+	/**
+	 * Returns the name of the authenticated user, or {@code null} for anonymous requests.
+	 */
+	public static String getUserName(Authentication authentication) {
+		if (authentication == null || authentication instanceof AnonymousAuthenticationToken) {
+			return null;
+		}
+		return authentication.getName();
+	}
+
+	/**
+	 * Checks whether a user may see the job and its result. Jobs are visible to the user who submitted them and to
+	 * administrators. Jobs submitted anonymously are only protected by their id.
+	 */
+	public boolean isVisibleTo(Authentication authentication) {
+		if (owner == null || owner.equals(getUserName(authentication))) {
+			return true;
+		}
+		if (authentication != null) {
+			for (GrantedAuthority authority : authentication.getAuthorities()) {
+				if ("ROLE_ADMIN".equals(authority.getAuthority())) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	public long getCreationTime() {
+		return creationTime;
+	}
+
+	/**
+	 * Returns the time the job finished, or 0 if it is still running.
+	 */
+	public long getCompletionTime() {
+		return completionTime;
+	}
+
+	/**
+	 * Returns the result of the pipeline. The body of the last response is buffered, so it can be read several times.
+	 */
+	@JsonIgnore
+	public CompletableFuture<WrappedPipelineResponse> getResult() {
+		return result;
+	}
+}
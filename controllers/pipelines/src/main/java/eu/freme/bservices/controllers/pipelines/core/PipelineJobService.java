@@ -0,0 +1,178 @@
+/**
+ * Copyright (C) 2015 Agro-Know, Deutsches Forschungszentrum für Künstliche Intelligenz, iMinds,
+ * Institut für Angewandte Informatik e. V. an der Universität Leipzig,
+ * Istituto Superiore Mario Boella, Tilde, Vistatec, WRIPL (http://freme-project.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.freme.bservices.controllers.pipelines.core;
+
+import eu.freme.common.conversion.rdf.RDFConstants;
+import eu.freme.common.persistence.model.SerializedRequest;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executes pipelines in the background, so that the servlet thread accepting a pipeline is released right away.
+ * Finished jobs are kept for a configurable time, after which their results are dropped. Both the number of waiting
+ * pipelines and the number of kept jobs are bounded: when either is reached, new pipelines are refused with status
+ * 503 (Service Unavailable).
+ */
+@Component
+public class PipelineJobService {
+	private final static Logger logger = Logger.getLogger(PipelineJobService.class);
+
+	@Autowired
+	private PipelineService pipelineService;
+
+	/**
+	 * Number of pipelines executed at the same time; further jobs wait in the queue.
+	 */
+	@Value("${pipelines.jobs.threads:16}")
+	private int threads;
+
+	/**
+	 * Number of pipelines waiting for a thread.
+	 */
+	@Value("${pipelines.jobs.queue-size:256}")
+	private int queueSize;
+
+	/**
+	 * Number of jobs kept, running or finished.
+	 */
+	@Value("${pipelines.jobs.max-jobs:1024}")
+	private int maxJobs;
+
+	/**
+	 * Number of seconds the result of a finished job is kept.
+	 */
+	@Value("${pipelines.jobs.ttl:3600}")
+	private long ttl;
+
+	private ThreadPoolExecutor executor;
+
+	private final Map<String, PipelineJob> jobs = new ConcurrentHashMap<>();
+
+	@PostConstruct
+	public void init() {
+		executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize));
+	}
+
+	@PreDestroy
+	public void destroy() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Starts the execution of a pipeline.
+	 * @param serializedRequests	The requests of the pipeline.
+	 * @param template				The id of the template the requests come from, {@code null} if none.
+	 * @param owner					The name of the user submitting the pipeline, {@code null} if anonymous.
+	 * @return						The job executing the pipeline.
+	 * @throws ServiceException		with status 503 if too many jobs are kept or waiting.
+	 */
+	public PipelineJob submit(final List<SerializedRequest> serializedRequests, final String template, final String owner) throws ServiceException {
+		if (jobs.size() >= maxJobs) {
+			throw busy();
+		}
+		PipelineJob job;
+		try {
+			job = new PipelineJob(UUID.randomUUID().toString(), owner, executeOrReject(serializedRequests, template));
+		} catch (RejectedExecutionException e) {
+			throw busy();
+		}
+		jobs.put(job.getId(), job);
+		return job;
+	}
+
+	/**
+	 * Executes a pipeline on the worker pool, without keeping a job for it.
+	 * @param serializedRequests	The requests of the pipeline.
+	 * @param template				The id of the template the requests come from, {@code null} if none.
+	 * @return						The result of the pipeline. The body of the last response is buffered. Fails with
+	 * 								a {@link ServiceException} with status 503 if too many pipelines are waiting.
+	 */
+	public CompletableFuture<WrappedPipelineResponse> execute(final List<SerializedRequest> serializedRequests, final String template) {
+		try {
+			return executeOrReject(serializedRequests, template);
+		} catch (RejectedExecutionException e) {
+			CompletableFuture<WrappedPipelineResponse> rejected = new CompletableFuture<>();
+			rejected.completeExceptionally(busy());
+			return rejected;
+		}
+	}
+
+	private CompletableFuture<WrappedPipelineResponse> executeOrReject(final List<SerializedRequest> serializedRequests, final String template) {
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				WrappedPipelineResponse response = pipelineService.chain(serializedRequests, template);
+				// the result may be fetched several times
+				response.getContent().buffer();
+				return response;
+			} catch (Exception e) {
+				throw new CompletionException(e);
+			}
+		}, executor);
+	}
+
+	private ServiceException busy() {
+		return new ServiceException(new PipelineResponse("Too many pipelines are waiting to be executed. Try again later.",
+				RDFConstants.RDFSerialization.PLAINTEXT.contentType()), HttpStatus.SERVICE_UNAVAILABLE);
+	}
+
+	/**
+	 * @param id	The id of the job.
+	 * @return		The job, or {@code null} if there is no such job or it has expired.
+	 */
+	public PipelineJob getJob(String id) {
+		PipelineJob job = jobs.get(id);
+		return job != null && isExpired(job, System.currentTimeMillis()) ? null : job;
+	}
+
+	private boolean isExpired(PipelineJob job, long now) {
+		long completionTime = job.getCompletionTime();
+		return completionTime > 0 && completionTime < now - ttl * 1000;
+	}
+
+	/**
+	 * Drops the results of the jobs that finished more than {@code pipelines.jobs.ttl} seconds ago.
+	 */
+	@Scheduled(fixedDelayString = "${pipelines.jobs.expiry-interval:60000}")
+	public void expire() {
+		long now = System.currentTimeMillis();
+		jobs.values().removeIf(job -> {
+			if (isExpired(job, now)) {
+				logger.debug("Dropping result of pipeline job " + job.getId());
+				return true;
+			}
+			return false;
+		});
+	}
+}
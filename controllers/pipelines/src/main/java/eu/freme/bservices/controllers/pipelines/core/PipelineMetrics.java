@@ -0,0 +1,196 @@
+/**
+ * Copyright (C) 2015 Agro-Know, Deutsches Forschungszentrum für Künstliche Intelligenz, iMinds,
+ * Institut für Angewandte Informatik e. V. an der Universität Leipzig,
+ * Istituto Superiore Mario Boella, Tilde, Vistatec, WRIPL (http://freme-project.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.freme.bservices.controllers.pipelines.core;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Collects latency histograms of executed pipelines: one per pipeline template and one per service endpoint. Template
+ * ids and endpoints are chosen by the callers, so the number of histograms of each kind is bounded: once the limit is
+ * reached, executions of new templates or endpoints are not recorded.
+ */
+@Component
+public class PipelineMetrics {
+
+	/**
+	 * Maximum number of histograms kept per kind, templates or endpoints.
+	 */
+	@Value("${pipelines.metrics.max-histograms:1000}")
+	private int maxHistograms;
+
+	private final ConcurrentMap<String, Histogram> templates = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<String, Histogram> endpoints = new ConcurrentHashMap<>();
+
+	private final AtomicLong dropped = new AtomicLong();
+
+	/**
+	 * Records the execution of a pipeline.
+	 * @param template	The id of the pipeline template, {@code null} if the pipeline was not started from a template.
+	 * @param steps		The statistics of the steps of the pipeline.
+	 * @param totalTime	The execution time of the pipeline in nanoseconds.
+	 */
+	public void record(String template, List<StepStatistics> steps, long totalTime) {
+		if (template != null) {
+			record(templates, template, totalTime);
+		}
+		for (StepStatistics step : steps) {
+			if (step != null && !step.isCached()) {
+				record(endpoints, step.getEndpoint(), step.getTotalTime());
+			}
+		}
+	}
+
+	private void record(ConcurrentMap<String, Histogram> histograms, String key, long time) {
+		Histogram histogram = histograms.get(key);
+		if (histogram == null) {
+			// concurrent executions may exceed the limit by a few histograms
+			if (histograms.size() >= maxHistograms) {
+				dropped.incrementAndGet();
+				return;
+			}
+			histogram = histograms.computeIfAbsent(key, k -> new Histogram());
+		}
+		histogram.record(time);
+	}
+
+	/**
+	 * @return number of executions not recorded because there were too many histograms
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	public Map<String, Histogram> getTemplates() {
+		return Collections.unmodifiableMap(templates);
+	}
+
+	public Map<String, Histogram> getEndpoints() {
+		return Collections.unmodifiableMap(endpoints);
+	}
+
+	/**
+	 * @param endpoint		The endpoint of a service.
+	 * @param percentile	The percentile, between 0 and 100.
+	 * @return				The given percentile of the execution times of the endpoint in milliseconds, -1 if not
+	 * 						enough executions were recorded yet.
+	 */
+	public long getEndpointPercentile(String endpoint, double percentile) {
+		Histogram histogram = endpoints.get(endpoint);
+		return histogram != null ? histogram.getPercentile(percentile) : -1;
+	}
+
+	public void clear() {
+		templates.clear();
+		endpoints.clear();
+	}
+
+	/**
+	 * Histogram of execution times with fixed buckets from 1 ms to 60 s.
+	 */
+	public static class Histogram {
+		private static final long[] BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000, 60000};
+
+		/**
+		 * Percentiles of fewer recorded times are not meaningful.
+		 */
+		private static final int MIN_COUNT = 20;
+
+		private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS.length + 1);
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong sum = new AtomicLong();
+		private final AtomicLong max = new AtomicLong();
+
+		void record(long nanos) {
+			long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+			int bucket = 0;
+			while (bucket < BOUNDS.length && millis > BOUNDS[bucket]) {
+				bucket++;
+			}
+			buckets.incrementAndGet(bucket);
+			count.incrementAndGet();
+			sum.addAndGet(nanos);
+			long currentMax;
+			while (nanos > (currentMax = max.get()) && !max.compareAndSet(currentMax, nanos)) {
+				// retry
+			}
+		}
+
+		public long getCount() {
+			return count.get();
+		}
+
+		/**
+		 * @return sum of the recorded times in nanoseconds
+		 */
+		public long getSum() {
+			return sum.get();
+		}
+
+		/**
+		 * @return maximum of the recorded times in nanoseconds
+		 */
+		public long getMax() {
+			return max.get();
+		}
+
+		/**
+		 * @param percentile	The percentile, between 0 and 100.
+		 * @return	upper bound in milliseconds of the bucket containing the given percentile, -1 if fewer than
+		 * 			{@value #MIN_COUNT} times were recorded
+		 */
+		public long getPercentile(double percentile) {
+			long total = count.get();
+			if (total < MIN_COUNT) {
+				return -1;
+			}
+			long rank = (long) Math.ceil(total * percentile / 100);
+			long seen = 0;
+			for (int i = 0; i < BOUNDS.length; i++) {
+				seen += buckets.get(i);
+				if (seen >= rank) {
+					return BOUNDS[i];
+				}
+			}
+			return TimeUnit.NANOSECONDS.toMillis(max.get());
+		}
+
+		/**
+		 * @return number of recorded times per bucket, keyed by the upper bound of the bucket in milliseconds
+		 */
+		public Map<String, Long> getBuckets() {
+			Map<String, Long> result = new LinkedHashMap<>();
+			for (int i = 0; i < BOUNDS.length; i++) {
+				result.put("le" + BOUNDS[i], buckets.get(i));
+			}
+			result.put("inf", buckets.get(BOUNDS.length));
+			return result;
+		}
+	}
+}
@@ -17,23 +17,115 @@
  */
 package eu.freme.bservices.controllers.pipelines.core;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
 /**
+ * The response of a pipeline step. The body is either held as UTF-8 bytes or is still being received from the
+ * service; in the latter case it is only read into memory when asked for as a whole.
+ *
  * @author Gerald Haesendonck
  */
-public class PipelineResponse {
-	private final String body;
+public class PipelineResponse implements Closeable {
 	private final String contentType;
+	private byte[] body;
+	private InputStream bodyStream;
+	private final Closeable connection;
 
 	public PipelineResponse(String body, String contentType) {
+		this.body = body != null ? body.getBytes(StandardCharsets.UTF_8) : null;
+		this.contentType = contentType;
+		this.connection = null;
+	}
+
+	PipelineResponse(byte[] body, String contentType) {
 		this.body = body;
 		this.contentType = contentType;
+		this.connection = null;
 	}
 
+	/**
+	 * Creates a response whose body is streamed from a service.
+	 * @param bodyStream	The body as it arrives from the service.
+	 * @param contentType	The content type of the body.
+	 * @param connection	Released when the body is read or the response is closed.
+	 */
+	public PipelineResponse(InputStream bodyStream, String contentType, Closeable connection) {
+		this.bodyStream = bodyStream;
+		this.contentType = contentType;
+		this.connection = connection;
+	}
+
+	/**
+	 * Returns the whole body, reading it from the service if it is still streamed.
+	 */
 	public String getBody() {
-		return body;
+		buffer();
+		return body != null ? new String(body, StandardCharsets.UTF_8) : null;
 	}
 
 	public String getContentType() {
 		return contentType;
 	}
+
+	/**
+	 * Returns the body as stream. A streamed body can be read only once; call {@link #buffer()} first if it has
+	 * to be read several times.
+	 */
+	@JsonIgnore
+	public InputStream getBodyStream() {
+		if (bodyStream != null) {
+			return bodyStream;
+		}
+		return body != null ? new ByteArrayInputStream(body) : null;
+	}
+
+	/**
+	 * Returns the whole body as UTF-8 bytes, reading it from the service if it is still streamed.
+	 */
+	byte[] getBodyBytes() {
+		buffer();
+		return body;
+	}
+
+	/**
+	 * Reads a streamed body into memory, so that it can be read several times.
+	 */
+	public void buffer() {
+		if (bodyStream == null) {
+			return;
+		}
+		try {
+			body = IOUtils.toByteArray(bodyStream);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			bodyStream = null;
+			close();
+		}
+	}
+
+	/**
+	 * Releases the connection the body is streamed from, if any.
+	 */
+	@Override
+	public void close() {
+		try {
+			if (bodyStream != null) {
+				bodyStream.close();
+			}
+			if (connection != null) {
+				connection.close();
+			}
+		} catch (IOException e) {
+			// the connection is discarded anyway
+		}
+	}
 }
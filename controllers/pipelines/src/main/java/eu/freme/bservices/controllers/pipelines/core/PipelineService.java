@@ -17,24 +17,66 @@
  */
 package eu.freme.bservices.controllers.pipelines.core;
 
-import com.mashape.unirest.http.HttpResponse;
-import com.mashape.unirest.http.Unirest;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
 import com.mashape.unirest.http.exceptions.UnirestException;
-import com.mashape.unirest.request.HttpRequestWithBody;
+import eu.freme.bservices.httpclient.HttpClientService;
 import eu.freme.bservices.internationalization.api.InternationalizationAPI;
 import eu.freme.bservices.internationalization.okapi.nif.converter.ConversionException;
 import eu.freme.common.conversion.rdf.RDFConstants;
 import eu.freme.common.conversion.rdf.RDFSerializationFormats;
+import eu.freme.common.exception.BadRequestException;
 import eu.freme.common.persistence.model.SerializedRequest;
+import eu.freme.common.persistence.model.StepPolicy;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.util.EntityUtils;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFLanguages;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.StringWriter;
+import java.net.SocketTimeoutException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author Gerald Haesendonck
@@ -43,12 +85,93 @@ import java.util.Map;
 public class PipelineService {
 	private final static Logger logger = Logger.getLogger(PipelineService.class);
 
+	/**
+	 * Deadline of requests without a policy, which may take as long as the service needs.
+	 */
+	private final static long NO_DEADLINE = Long.MAX_VALUE;
+
 	@Autowired
 	private RDFSerializationFormats serializationFormats;
 
 	@Autowired
 	private InternationalizationAPI internationalizationApi;
 
+	@Autowired
+	private HttpClientService httpClientService;
+
+	@Autowired
+	private StepResponseCache stepCache;
+
+	@Autowired
+	private PipelineMetrics metrics;
+
+	@Autowired
+	private CircuitBreakers breakers;
+
+	/**
+	 * Number of threads executing the requests of pipeline graphs.
+	 */
+	@Value("${pipelines.parallel-threads:8}")
+	private int parallelThreads;
+
+	/**
+	 * Number of milliseconds to wait before the first retry of a request whose policy does not set a backoff.
+	 */
+	@Value("${pipelines.retry.backoff:100}")
+	private long defaultBackoff;
+
+	/**
+	 * Maximum number of retries of a request, whatever its policy asks for.
+	 */
+	@Value("${pipelines.retry.max-retries:5}")
+	private int maxRetries;
+
+	/**
+	 * Maximum number of milliseconds to wait before a retry.
+	 */
+	@Value("${pipelines.retry.max-backoff:10000}")
+	private long maxBackoff;
+
+	/**
+	 * Maximum number of milliseconds a request with a policy may take, including all its attempts and the waits
+	 * between them.
+	 */
+	@Value("${pipelines.step.deadline:60000}")
+	private long stepDeadline;
+
+	/**
+	 * Maximum number of attempts of hedged requests running at the same time. Hedged requests beyond that are sent
+	 * without hedging.
+	 */
+	@Value("${pipelines.hedge.threads:16}")
+	private int hedgeThreads;
+
+	private ExecutorService executor;
+
+	/**
+	 * Runs the attempts of hedged requests.
+	 */
+	private ExecutorService hedgeExecutor;
+
+	/**
+	 * Aborts requests that exceed the timeout of their policy.
+	 */
+	private ScheduledExecutorService timer;
+
+	@PostConstruct
+	public void init() {
+		executor = Executors.newFixedThreadPool(parallelThreads);
+		hedgeExecutor = new ThreadPoolExecutor(0, hedgeThreads, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+		timer = Executors.newSingleThreadScheduledExecutor();
+	}
+
+	@PreDestroy
+	public void destroy() {
+		executor.shutdownNow();
+		hedgeExecutor.shutdownNow();
+		timer.shutdownNow();
+	}
+
 	/**
 	 * Performs a chain of requests to other e-services (pipeline).
 	 * @param serializedRequests  Requests to different services, serialized in JSON.
@@ -56,7 +179,21 @@ public class PipelineService {
 	 */
 	@SuppressWarnings("unused")
 	public WrappedPipelineResponse chain(final List<SerializedRequest> serializedRequests) throws IOException, UnirestException, ServiceException {
+		return chain(serializedRequests, null);
+	}
+
+	/**
+	 * Performs a chain of requests to other e-services (pipeline).
+	 * @param serializedRequests  Requests to different services, serialized in JSON.
+	 * @param template            The id of the template the requests come from, used for metrics. Can be {@code null}.
+	 * @return                    The result of the pipeline.
+	 */
+	public WrappedPipelineResponse chain(final List<SerializedRequest> serializedRequests, final String template) throws IOException, UnirestException, ServiceException {
 		Map<String, Long> executionTime = new LinkedHashMap<>();
+		// each step sets its own element, also when steps run in parallel
+		List<StepStatistics> steps = Arrays.asList(new StepStatistics[serializedRequests.size()]);
+		long htmlToNifTime = 0;
+		long nifToHtmlTime = 0;
 
 		// determine mime types of first and last pipeline request
 		Conversion conversion = null;
@@ -68,9 +205,10 @@ public class PipelineService {
 				roundtrip = true;
 				conversion = new Conversion(internationalizationApi);
 				try {
-					long startOfRequest = System.currentTimeMillis();
+					long startOfRequest = System.nanoTime();
 					String nif = conversion.htmlToNif(serializedRequests.get(0).getBody());
-					executionTime.put("e-Internationalization (HTML -> NIF)", (System.currentTimeMillis() - startOfRequest));
+					htmlToNifTime = System.nanoTime() - startOfRequest;
+					executionTime.put("e-Internationalization (HTML -> NIF)", TimeUnit.NANOSECONDS.toMillis(htmlToNifTime));
 					serializedRequests.get(0).setBody(nif);
 				} catch (ConversionException e) {
 					logger.warn("Could not convert the HTLM contents to NIF. Tying to proceed without converting... Error: ", e);
@@ -79,69 +217,555 @@ public class PipelineService {
 			}
 		}
 
+		if (roundtrip) {
+			for (SerializedRequest serializedRequest : serializedRequests) {
+				serializedRequest.getHeaders().put("content-type", RDFConstants.RDFSerialization.TURTLE.contentType());
+				serializedRequest.getHeaders().put("accept", RDFConstants.RDFSerialization.TURTLE.contentType());
+				serializedRequest.getParameters().remove("informat");
+				serializedRequest.getParameters().remove("f");
+				serializedRequest.getParameters().remove("outformat");
+				serializedRequest.getParameters().remove("o");
+			}
+		}
+
 		PipelineResponse lastResponse = new PipelineResponse(serializedRequests.get(0).getBody(), null);
-		long start = System.currentTimeMillis();
-		for (int reqNr = 0; reqNr < serializedRequests.size(); reqNr++) {
-			long startOfRequest = System.currentTimeMillis();
-			SerializedRequest serializedRequest = serializedRequests.get(reqNr);
-			try {
-				if (roundtrip) {
-					serializedRequest.getHeaders().put("content-type", RDFConstants.RDFSerialization.TURTLE.contentType());
-					serializedRequest.getHeaders().put("accept", RDFConstants.RDFSerialization.TURTLE.contentType());
-					serializedRequest.getParameters().remove("informat");
-					serializedRequest.getParameters().remove("f");
-					serializedRequest.getParameters().remove("outformat");
-					serializedRequest.getParameters().remove("o");
-				}
-				lastResponse = execute(serializedRequest, lastResponse.getBody());
-			} catch (UnirestException e) {
-				throw new UnirestException("Request " + reqNr + ": " + e.getMessage());
-			} catch (IOException e) {
-				throw new IOException("Request " + reqNr + ": " + e.getMessage());
-			} finally {
-				long endOfRequest = System.currentTimeMillis();
-				executionTime.put(serializedRequest.getEndpoint(), (endOfRequest - startOfRequest));
+		long start = System.nanoTime();
+		if (isGraph(serializedRequests)) {
+			lastResponse = executeGraph(serializedRequests, lastResponse, Collections.synchronizedMap(executionTime), steps);
+		} else {
+			// the response of each step is streamed into the request of the next step
+			for (int reqNr = 0; reqNr < serializedRequests.size(); reqNr++) {
+				PipelineResponse input = lastResponse;
+				try {
+					lastResponse = executeStep(reqNr, serializedRequests.get(reqNr), input, 0, executionTime, steps);
+				} finally {
+					input.close();
+				}
 			}
 		}
 		if (roundtrip) {
-			long startOfRequest = System.currentTimeMillis();
+			long startOfRequest = System.nanoTime();
 			String html = conversion.nifToHtml(lastResponse.getBody());
 			lastResponse = new PipelineResponse(html, RDFConstants.RDFSerialization.HTML.contentType());
-			executionTime.put("e-Internationalization (NIF -> HTML)", (System.currentTimeMillis() - startOfRequest));
+			nifToHtmlTime = System.nanoTime() - startOfRequest;
+			executionTime.put("e-Internationalization (NIF -> HTML)", TimeUnit.NANOSECONDS.toMillis(nifToHtmlTime));
+		}
+		long totalTime = System.nanoTime() - start;
+		metrics.record(template, steps, totalTime);
+		Metadata metadata = new Metadata(executionTime, TimeUnit.NANOSECONDS.toMillis(totalTime), steps, htmlToNifTime, nifToHtmlTime);
+		return new WrappedPipelineResponse(lastResponse, metadata);
+	}
+
+	/**
+	 * A pipeline is executed as graph when at least one of its requests declares its inputs.
+	 */
+	private boolean isGraph(final List<SerializedRequest> serializedRequests) {
+		for (SerializedRequest serializedRequest : serializedRequests) {
+			if (serializedRequest.getInputs() != null) {
+				return true;
+			}
 		}
-		long end = System.currentTimeMillis();
-		return new WrappedPipelineResponse(lastResponse, executionTime, (end - start));
+		return false;
 	}
 
-	private PipelineResponse execute(final SerializedRequest request, final String body) throws UnirestException, IOException, ServiceException {
+	/**
+	 * Executes the requests of a pipeline as a graph. Each request starts as soon as the requests it takes as input
+	 * are done, so requests that do not depend on each other run in parallel. A request without declared inputs takes
+	 * the response of the previous request, a request with several inputs gets the union of their NIF responses.
+	 * @param serializedRequests	The requests of the pipeline.
+	 * @param pipelineInput			The input of the pipeline.
+	 * @param executionTime			Collects the execution time of each request. Must be thread safe.
+	 * @param steps					Collects the statistics of each request.
+	 * @return						The response of the last request.
+	 */
+	private PipelineResponse executeGraph(final List<SerializedRequest> serializedRequests, final PipelineResponse pipelineInput,
+										  final Map<String, Long> executionTime, final List<StepStatistics> steps) throws IOException, UnirestException, ServiceException {
+		Map<String, Integer> ids = new HashMap<>();
+		for (int reqNr = 0; reqNr < serializedRequests.size(); reqNr++) {
+			String id = serializedRequests.get(reqNr).getId();
+			if (id != null && ids.put(id, reqNr) != null) {
+				throw new BadRequestException("Request " + reqNr + ": the id \"" + id + "\" is used by several requests.");
+			}
+		}
+		List<List<Integer>> dependencies = new ArrayList<>(serializedRequests.size());
+		for (int reqNr = 0; reqNr < serializedRequests.size(); reqNr++) {
+			List<String> inputs = serializedRequests.get(reqNr).getInputs();
+			List<Integer> requestDependencies = new ArrayList<>();
+			if (inputs == null) {
+				if (reqNr > 0) {
+					requestDependencies.add(reqNr - 1);
+				}
+			} else {
+				for (String input : inputs) {
+					Integer dependency = ids.get(input);
+					if (dependency == null) {
+						throw new BadRequestException("Request " + reqNr + ": unknown input \"" + input + "\".");
+					}
+					requestDependencies.add(dependency);
+				}
+			}
+			dependencies.add(requestDependencies);
+		}
+
+		int[] dependents = new int[serializedRequests.size()];
+		for (List<Integer> requestDependencies : dependencies) {
+			for (int dependency : requestDependencies) {
+				dependents[dependency]++;
+			}
+		}
+		// the input of the pipeline may be read by several requests
+		pipelineInput.buffer();
+
+		List<CompletableFuture<PipelineResponse>> futures = new ArrayList<>(Collections.<CompletableFuture<PipelineResponse>>nCopies(serializedRequests.size(), null));
+		for (int reqNr = 0; reqNr < serializedRequests.size(); reqNr++) {
+			schedule(reqNr, serializedRequests, dependencies, dependents, futures, new HashSet<Integer>(), pipelineInput, executionTime, steps);
+		}
+		try {
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).join();
+			return futures.get(futures.size() - 1).join();
+		} catch (CompletionException e) {
+			// all requests are done; release the connections of the responses nobody will read
+			for (CompletableFuture<PipelineResponse> future : futures) {
+				if (future.isDone() && !future.isCompletedExceptionally()) {
+					future.join().close();
+				}
+			}
+			throw rethrow(e.getCause());
+		}
+	}
+
+	/**
+	 * Throws the cause of a failed future with its own type.
+	 * @return	the cause as IOException, if it is none of the thrown types.
+	 */
+	private IOException rethrow(final Throwable cause) throws UnirestException, ServiceException {
+		if (cause instanceof UnirestException) {
+			throw (UnirestException) cause;
+		} else if (cause instanceof IOException) {
+			return (IOException) cause;
+		} else if (cause instanceof ServiceException) {
+			throw (ServiceException) cause;
+		} else if (cause instanceof RuntimeException) {
+			throw (RuntimeException) cause;
+		}
+		return new IOException(cause);
+	}
+
+	/**
+	 * Schedules a request of a pipeline graph after the requests it depends on.
+	 */
+	private CompletableFuture<PipelineResponse> schedule(final int reqNr, final List<SerializedRequest> serializedRequests,
+														 final List<List<Integer>> dependencies, final int[] dependents,
+														 final List<CompletableFuture<PipelineResponse>> futures,
+														 final Set<Integer> visiting, final PipelineResponse pipelineInput,
+														 final Map<String, Long> executionTime, final List<StepStatistics> steps) {
+		CompletableFuture<PipelineResponse> future = futures.get(reqNr);
+		if (future != null) {
+			return future;
+		}
+		if (!visiting.add(reqNr)) {
+			throw new BadRequestException("Request " + reqNr + ": the inputs of the pipeline contain a cycle.");
+		}
+		final List<CompletableFuture<PipelineResponse>> inputs = new ArrayList<>();
+		for (int dependency : dependencies.get(reqNr)) {
+			inputs.add(schedule(dependency, serializedRequests, dependencies, dependents, futures, visiting, pipelineInput, executionTime, steps));
+		}
+		visiting.remove(reqNr);
+
+		future = CompletableFuture.allOf(inputs.toArray(new CompletableFuture[inputs.size()])).thenApplyAsync(v -> {
+			PipelineResponse body;
+			long conversionTime = 0;
+			if (inputs.isEmpty()) {
+				body = pipelineInput;
+			} else if (inputs.size() == 1) {
+				body = inputs.get(0).join();
+			} else {
+				List<PipelineResponse> responses = new ArrayList<>(inputs.size());
+				for (CompletableFuture<PipelineResponse> input : inputs) {
+					responses.add(input.join());
+				}
+				long startOfMerge = System.nanoTime();
+				body = new PipelineResponse(merge(responses), RDFConstants.RDFSerialization.TURTLE.contentType());
+				conversionTime = System.nanoTime() - startOfMerge;
+				SerializedRequest serializedRequest = serializedRequests.get(reqNr);
+				serializedRequest.getHeaders().put("content-type", RDFConstants.RDFSerialization.TURTLE.contentType());
+				serializedRequest.getParameters().remove("informat");
+				serializedRequest.getParameters().remove("f");
+			}
+			try {
+				PipelineResponse response = executeStep(reqNr, serializedRequests.get(reqNr), body, conversionTime, executionTime, steps);
+				if (dependents[reqNr] > 0) {
+					// several requests may read this response
+					response.buffer();
+				} else if (reqNr < serializedRequests.size() - 1) {
+					// nobody reads this response
+					response.close();
+				}
+				return response;
+			} catch (IOException | UnirestException | ServiceException e) {
+				throw new CompletionException(e);
+			}
+		}, executor);
+		futures.set(reqNr, future);
+		return future;
+	}
+
+	/**
+	 * Merges the NIF responses of several requests into one turtle document.
+	 */
+	private String merge(final List<PipelineResponse> responses) {
+		Model model = ModelFactory.createDefaultModel();
+		for (PipelineResponse response : responses) {
+			Lang lang = response.getContentType() != null ? RDFLanguages.contentTypeToLang(response.getContentType()) : null;
+			model.read(response.getBodyStream(), null, (lang != null ? lang : Lang.TURTLE).getName());
+		}
+		StringWriter writer = new StringWriter();
+		model.write(writer, "TTL");
+		return writer.toString();
+	}
+
+	private PipelineResponse executeStep(final int reqNr, final SerializedRequest serializedRequest, final PipelineResponse input,
+										 final long conversionTime, final Map<String, Long> executionTime,
+										 final List<StepStatistics> steps) throws IOException, UnirestException, ServiceException {
+		StepStatistics statistics = new StepStatistics(reqNr, serializedRequest.getEndpoint());
+		statistics.setConversionTime(conversionTime);
+		steps.set(reqNr, statistics);
+		long startOfRequest = System.nanoTime();
+		try {
+			if (!stepCache.isCacheable(serializedRequest)) {
+				return executeWithPolicy(serializedRequest, input, statistics);
+			}
+			// the body of the request is part of the key, so it is read as a whole
+			String key = stepCache.key(serializedRequest, input);
+			PipelineResponse response = stepCache.get(key);
+			if (response != null) {
+				statistics.setCached(true);
+				byte[] body = response.getBodyBytes();
+				statistics.addResponseBytes(body != null ? body.length : 0);
+				return response;
+			}
+			response = executeWithPolicy(serializedRequest, input, statistics);
+			response.buffer();
+			stepCache.put(key, response, serializedRequest.getCacheTtl());
+			return response;
+		} catch (UnirestException e) {
+			throw new UnirestException("Request " + reqNr + ": " + e.getMessage());
+		} catch (IOException e) {
+			throw new IOException("Request " + reqNr + ": " + e.getMessage());
+		} finally {
+			long time = System.nanoTime() - startOfRequest;
+			statistics.setTotalTime(time);
+			executionTime.put(serializedRequest.getEndpoint() + (statistics.isCached() ? " (cached)" : ""), TimeUnit.NANOSECONDS.toMillis(time));
+		}
+	}
+
+	/**
+	 * Sends a request to a service as its {@link StepPolicy} says: connection errors, timeouts and 5xx responses are
+	 * retried with exponential backoff, and a request that takes longer than the given percentile of the endpoint
+	 * is sent a second time. Requests with a policy to an endpoint whose circuit breaker is open fail immediately;
+	 * requests without a policy neither check nor trip the breaker. The retries, the waits between them and the
+	 * total time of a request with a policy are bounded by the configuration.
+	 * @param request	The request to send.
+	 * @param input		The response of the previous step, used as body of the request. Can be {@code null}.
+	 * @param statistics	Receives the timings and sizes of the request.
+	 * @return			The response of the service.
+	 */
+	private PipelineResponse executeWithPolicy(final SerializedRequest request, final PipelineResponse input, final StepStatistics statistics) throws UnirestException, IOException, ServiceException {
+		StepPolicy policy = request.getPolicy();
+		int retries = policy != null && policy.getRetries() != null ? Math.max(0, Math.min(policy.getRetries(), maxRetries)) : 0;
+		long backoff = policy != null && policy.getBackoff() != null ? Math.max(0, policy.getBackoff()) : defaultBackoff;
+		long deadline = policy != null ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(stepDeadline) : NO_DEADLINE;
+		long hedgeDelay = policy != null && policy.getHedgePercentile() != null
+				? metrics.getEndpointPercentile(request.getEndpoint(), policy.getHedgePercentile()) : -1;
+		if (input != null && (retries > 0 || hedgeDelay >= 0)) {
+			// the body may be sent several times
+			input.buffer();
+		}
+		for (int attempt = 0; ; attempt++) {
+			if (policy != null) {
+				breakers.allow(request.getEndpoint());
+			}
+			try {
+				if (hedgeDelay >= 0) {
+					return executeHedged(request, input, statistics, hedgeDelay, deadline);
+				}
+				return executeAttempt(request, input, statistics, null, deadline);
+			} catch (IOException | ServiceException e) {
+				if (attempt >= retries || (e instanceof ServiceException && !((ServiceException) e).getStatus().is5xxServerError())) {
+					throw e;
+				}
+				long wait = Math.min(backoff << Math.min(attempt, 30), maxBackoff);
+				if (remainingMillis(deadline) <= wait) {
+					logger.info("Request to " + request.getEndpoint() + " failed (" + e.getMessage() + "), no time left to retry.");
+					throw e;
+				}
+				logger.info("Request to " + request.getEndpoint() + " failed (" + e.getMessage() + "), retrying in " + wait + " ms.");
+				try {
+					Thread.sleep(wait);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while waiting to retry " + request.getEndpoint());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sends a request and, if no response arrived after the given delay, sends it a second time. The first
+	 * successful response is returned and the other request is aborted.
+	 */
+	private PipelineResponse executeHedged(final SerializedRequest request, final PipelineResponse input, final StepStatistics statistics,
+										   final long delay, final long deadline) throws UnirestException, IOException, ServiceException {
+		final Attempt first = new Attempt();
+		CompletableFuture<PipelineResponse> firstResponse;
+		try {
+			firstResponse = submitAttempt(request, input, statistics, first, deadline);
+		} catch (RejectedExecutionException e) {
+			// all hedging threads are busy
+			return executeAttempt(request, input, statistics, null, deadline);
+		}
+		try {
+			return firstResponse.get(delay, TimeUnit.MILLISECONDS);
+		} catch (ExecutionException e) {
+			throw rethrow(e.getCause());
+		} catch (InterruptedException e) {
+			first.cancel();
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for " + request.getEndpoint());
+		} catch (TimeoutException e) {
+			// slower than usual, send the request a second time below
+		}
+		if (!breakers.tryAllow(request.getEndpoint())) {
+			return join(firstResponse);
+		}
+		final Attempt second = new Attempt();
+		CompletableFuture<PipelineResponse> secondResponse;
+		try {
+			secondResponse = submitAttempt(request, input, statistics, second, deadline);
+		} catch (RejectedExecutionException e) {
+			// all hedging threads are busy; the trial of a half open breaker times out by itself
+			return join(firstResponse);
+		}
+
+		final CompletableFuture<PipelineResponse> result = new CompletableFuture<>();
+		final AtomicInteger failures = new AtomicInteger();
+		firstResponse.whenComplete((response, error) -> race(result, failures, response, error, second));
+		secondResponse.whenComplete((response, error) -> race(result, failures, response, error, first));
+		return join(result);
+	}
+
+	/**
+	 * Completes the result of a hedged request with the first response, or with the last error if both attempts
+	 * failed.
+	 */
+	private void race(final CompletableFuture<PipelineResponse> result, final AtomicInteger failures,
+					  final PipelineResponse response, final Throwable error, final Attempt other) {
+		if (error == null) {
+			if (result.complete(response)) {
+				other.cancel();
+			} else {
+				response.close();
+			}
+		} else if (failures.incrementAndGet() == 2) {
+			result.completeExceptionally(error instanceof CompletionException ? error.getCause() : error);
+		}
+	}
+
+	private PipelineResponse join(final CompletableFuture<PipelineResponse> future) throws UnirestException, IOException, ServiceException {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			throw rethrow(e.getCause());
+		}
+	}
+
+	private CompletableFuture<PipelineResponse> submitAttempt(final SerializedRequest request, final PipelineResponse input,
+															  final StepStatistics statistics, final Attempt attempt, final long deadline) {
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return executeAttempt(request, input, statistics, attempt, deadline);
+			} catch (IOException | UnirestException | ServiceException e) {
+				throw new CompletionException(e);
+			}
+		}, hedgeExecutor);
+	}
+
+	/**
+	 * Sends a request once and, if it has a policy, reports the outcome to the circuit breaker of the endpoint. A 4xx
+	 * response means the service is up, so only connection errors, timeouts and 5xx responses count as failures.
+	 */
+	private PipelineResponse executeAttempt(final SerializedRequest request, final PipelineResponse input, final StepStatistics statistics,
+											final Attempt attempt, final long deadline) throws UnirestException, IOException, ServiceException {
+		statistics.addAttempt();
+		boolean failed = true;
+		try {
+			PipelineResponse response = execute(request, input, statistics, attempt, deadline);
+			failed = false;
+			return response;
+		} catch (ServiceException e) {
+			failed = e.getStatus().is5xxServerError();
+			throw e;
+		} finally {
+			if (request.getPolicy() == null) {
+				// the breaker only guards requests that ask for it
+			} else if (attempt != null && attempt.isCancelled()) {
+				// aborted because the other attempt of a hedged request was faster, or the caller was interrupted
+			} else if (failed) {
+				breakers.failure(request.getEndpoint());
+			} else {
+				breakers.success(request.getEndpoint());
+			}
+		}
+	}
+
+	/**
+	 * Sends a request to a service. The body of the input is streamed to the service, and the body of the
+	 * returned response is streamed from the service: it has to be read or closed by the caller.
+	 * @param request	The request to send.
+	 * @param input		The response of the previous step, used as body of the request. Can be {@code null}.
+	 * @param statistics	Receives the timings and sizes of the request.
+	 * @param attempt	Allows to abort the request from another thread. Can be {@code null}.
+	 * @param deadline	The {@link System#nanoTime()} by which the request has to be answered, or {@link #NO_DEADLINE}.
+	 * @return			The response of the service.
+	 */
+	private PipelineResponse execute(final SerializedRequest request, final PipelineResponse input, final StepStatistics statistics,
+									 final Attempt attempt, final long deadline) throws UnirestException, IOException, ServiceException {
 		switch (request.getMethod()) {
 			case GET:
 				throw new UnsupportedOperationException("GET is not supported at this moment.");
 			default:
-				HttpRequestWithBody req = Unirest.post(request.getEndpoint());
-				if (request.getHeaders() != null && !request.getHeaders().isEmpty()) {
-					req.headers(request.getHeaders());
+				HttpPost post;
+				try {
+					URIBuilder uri = new URIBuilder(request.getEndpoint());
+					if (request.getParameters() != null) {
+						for (Map.Entry<String, Object> parameter : request.getParameters().entrySet()) {
+							if (parameter.getValue() instanceof Collection) {
+								for (Object value : (Collection<?>) parameter.getValue()) {
+									uri.addParameter(parameter.getKey(), String.valueOf(value));
+								}
+							} else if (parameter.getValue() != null) {
+								uri.addParameter(parameter.getKey(), parameter.getValue().toString());
+							}
+						}
+					}
+					post = new HttpPost(uri.build());
+				} catch (URISyntaxException e) {
+					throw new UnirestException("Invalid endpoint \"" + request.getEndpoint() + "\": " + e.getMessage());
 				}
-				if (request.getParameters() != null && !request.getParameters().isEmpty()) {
-					req.queryString(request.getParameters());	// encode as POST parameters
+				if (request.getHeaders() != null) {
+					for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+						post.setHeader(header.getKey(), header.getValue());
+					}
 				}
-
-				HttpResponse<String> response;
+				InputStream body = input != null ? input.getBodyStream() : null;
 				if (body != null) {
-					response = req.body(body).asString();
-				} else {
-					response = req.asString();
+					post.setEntity(new InputStreamEntity(new MeasuringInputStream(body, statistics::addRequestBytes, null), -1));
+				}
+
+				Integer timeout = request.getPolicy() != null ? request.getPolicy().getTimeout() : null;
+				long remaining = remainingMillis(deadline);
+				if (remaining <= 0) {
+					throw new SocketTimeoutException("The deadline of the request to \"" + request.getEndpoint() + "\" has passed.");
+				}
+				if (remaining < Integer.MAX_VALUE && (timeout == null || remaining < timeout)) {
+					// the attempt may not take longer than the whole step
+					timeout = (int) remaining;
+				}
+				if (timeout != null) {
+					post.setConfig(RequestConfig.copy(httpClientService.getRequestConfig())
+							.setConnectTimeout(timeout)
+							.setConnectionRequestTimeout(timeout)
+							.setSocketTimeout(timeout)
+							.build());
 				}
-				if (!HttpStatus.Series.valueOf(response.getStatus()).equals(HttpStatus.Series.SUCCESSFUL)) {
-					String errorBody = response.getBody();
-					HttpStatus status = HttpStatus.valueOf(response.getStatus());
+				if (attempt != null) {
+					attempt.start(post);
+				}
+
+				HttpClientContext context = HttpClientContext.create();
+				long startOfRequest = System.nanoTime();
+				// the socket timeout only limits the time between two packets, so also limit the time until the headers arrive
+				ScheduledFuture<?> deadline = timeout != null ? timer.schedule(post::abort, timeout, TimeUnit.MILLISECONDS) : null;
+				org.apache.http.HttpResponse response;
+				try {
+					response = httpClientService.getHttpClient().execute(post, context);
+				} catch (IOException e) {
+					if (deadline != null && deadline.isDone()) {
+						throw new SocketTimeoutException("The service \"" + request.getEndpoint() + "\" did not answer within " + timeout + " ms.");
+					}
+					throw e;
+				}
+				if (deadline != null && !deadline.cancel(false)) {
+					// the deadline passed right after the response arrived
+					if (response instanceof Closeable) {
+						((Closeable) response).close();
+					}
+					throw new SocketTimeoutException("The service \"" + request.getEndpoint() + "\" did not answer within " + timeout + " ms.");
+				}
+				statistics.setFirstByteTime(System.nanoTime() - startOfRequest);
+				Object connectTime = context.getAttribute(HttpClientService.CONNECT_TIME);
+				if (connectTime instanceof Long) {
+					statistics.setConnectTime((Long) connectTime);
+				}
+				HttpEntity entity = response.getEntity();
+				Header contentTypeHeader = response.getFirstHeader("content-type");
+				String contentType = contentTypeHeader != null ? contentTypeHeader.getValue() : null;
+				Closeable connection = response instanceof Closeable ? (Closeable) response : null;
+				int statusCode = response.getStatusLine().getStatusCode();
+				if (!HttpStatus.Series.valueOf(statusCode).equals(HttpStatus.Series.SUCCESSFUL)) {
+					String errorBody;
+					try {
+						errorBody = entity != null ? EntityUtils.toString(entity, StandardCharsets.UTF_8) : null;
+					} finally {
+						if (connection != null) {
+							connection.close();
+						}
+					}
+					HttpStatus status = HttpStatus.valueOf(statusCode);
 					if (errorBody == null || errorBody.isEmpty()) {
 						throw new ServiceException(new PipelineResponse( "The service \"" + request.getEndpoint() + "\" reported HTTP status " + status.toString() + ". No further explanation given by service.", RDFConstants.RDFSerialization.PLAINTEXT.contentType()), status);
 					} else {
-						throw new ServiceException(new PipelineResponse(errorBody, response.getHeaders().getFirst("content-type")), status);
+						throw new ServiceException(new PipelineResponse(errorBody, contentType), status);
 					}
 				}
-				return new PipelineResponse(response.getBody(), response.getHeaders().getFirst("content-type"));
+				InputStream content = entity != null ? new MeasuringInputStream(entity.getContent(), statistics::addResponseBytes, statistics::setTransferTime) : null;
+				return new PipelineResponse(content, contentType, connection);
+		}
+	}
+
+	/**
+	 * @return	The number of milliseconds until the deadline, or {@link Long#MAX_VALUE} for {@link #NO_DEADLINE}.
+	 */
+	private static long remainingMillis(final long deadline) {
+		if (deadline == NO_DEADLINE) {
+			return Long.MAX_VALUE;
+		}
+		return TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+	}
+
+	/**
+	 * One of the requests of a hedged step, which is aborted when the other request answers first.
+	 */
+	private static class Attempt {
+		private HttpPost post;
+		private boolean cancelled;
+
+		synchronized void start(final HttpPost post) {
+			this.post = post;
+			if (cancelled) {
+				post.abort();
+			}
+		}
+
+		synchronized void cancel() {
+			cancelled = true;
+			if (post != null) {
+				post.abort();
+			}
+		}
+
+		synchronized boolean isCancelled() {
+			return cancelled;
 		}
 	}
 }
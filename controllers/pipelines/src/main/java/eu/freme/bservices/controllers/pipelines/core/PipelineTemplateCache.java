@@ -0,0 +1,128 @@
+/**
+ * Copyright (C) 2015 Agro-Know, Deutsches Forschungszentrum für Künstliche Intelligenz, iMinds,
+ * Institut für Angewandte Informatik e. V. an der Universität Leipzig,
+ * Istituto Superiore Mario Boella, Tilde, Vistatec, WRIPL (http://freme-project.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.freme.bservices.controllers.pipelines.core;
+
+import eu.freme.common.persistence.model.Pipeline;
+import eu.freme.common.persistence.model.SerializedRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps pipeline templates in compiled form: the requests of the template are deserialized and their internal
+ * serialization formats are normalized to turtle only once. Executing a template then only takes a copy of the
+ * compiled requests. A compiled template is recompiled when the requests of the template change.
+ */
+@Component
+public class PipelineTemplateCache {
+
+	/**
+	 * Maximum number of compiled templates kept; the least recently used ones are dropped first.
+	 */
+	@Value("${pipelines.template-cache.size:256}")
+	private int maxSize;
+
+	private Map<Long, CompiledPipeline> templates;
+
+	@PostConstruct
+	public void init() {
+		templates = Collections.synchronizedMap(new LinkedHashMap<Long, CompiledPipeline>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, CompiledPipeline> eldest) {
+				return size() > maxSize;
+			}
+		});
+	}
+
+	/**
+	 * Returns the requests of a pipeline template, ready to be filled with the contents of a call.
+	 * @param pipeline	The pipeline template.
+	 * @return			Copies of the normalized requests of the template, which can be changed.
+	 */
+	public List<SerializedRequest> instantiate(Pipeline pipeline) throws IOException {
+		String source = pipeline.getRequests();
+		CompiledPipeline compiled = templates.get(pipeline.getId());
+		if (compiled == null || source == null || !source.equals(compiled.source)) {
+			compiled = new CompiledPipeline(source, pipeline.getSerializedRequests());
+			if (source != null) {
+				templates.put(pipeline.getId(), compiled);
+			}
+		}
+		return compiled.instantiate();
+	}
+
+	/**
+	 * Drops the compiled form of a template, e.g. after it was changed or deleted.
+	 * @param id	The id of the pipeline template.
+	 */
+	public void invalidate(long id) {
+		templates.remove(id);
+	}
+
+	public void clear() {
+		templates.clear();
+	}
+
+	public int getSize() {
+		return templates.size();
+	}
+
+	private static class CompiledPipeline {
+		/** The serialized requests the template was compiled from. */
+		private final String source;
+		private final List<SerializedRequest> requests;
+
+		CompiledPipeline(String source, List<SerializedRequest> serializedRequests) {
+			this.source = source;
+			List<SerializedRequest> normalized = new ArrayList<>(serializedRequests.size());
+			// normalize internal serialization formats to turtle
+			int i = 0;
+			for (SerializedRequest serializedRequest : serializedRequests) {
+				SerializedRequest request = serializedRequest.copy();
+				// set internal informats
+				if (i > 0) {
+					request.removeParameter("informat");
+					request.addHeader("content-type", "text/turtle");
+				}
+				// set internal outformats
+				if (i < serializedRequests.size() - 1) {
+					request.removeParameter("outformat");
+					request.addHeader("accept", "text/turtle");
+				}
+				normalized.add(request);
+				i++;
+			}
+			this.requests = Collections.unmodifiableList(normalized);
+		}
+
+		List<SerializedRequest> instantiate() {
+			List<SerializedRequest> copies = new ArrayList<>(requests.size());
+			for (SerializedRequest request : requests) {
+				copies.add(request.copy());
+			}
+			return copies;
+		}
+	}
+}
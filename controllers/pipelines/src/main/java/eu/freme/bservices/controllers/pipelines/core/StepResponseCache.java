@@ -0,0 +1,210 @@
+/**
+ * Copyright (C) 2015 Agro-Know, Deutsches Forschungszentrum für Künstliche Intelligenz, iMinds,
+ * Institut für Angewandte Informatik e. V. an der Universität Leipzig,
+ * Istituto Superiore Mario Boella, Tilde, Vistatec, WRIPL (http://freme-project.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.freme.bservices.controllers.pipelines.core;
+
+import eu.freme.common.persistence.model.SerializedRequest;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Bounded cache of the responses of pipeline steps. Only requests with a cache TTL
+ * ({@link SerializedRequest#getCacheTtl()}) are cached. Responses are addressed by a hash of the method, the endpoint,
+ * the parameters and headers in sorted order and the body of the request, so a step that gets the same input again
+ * does not call its service. Entries expire after their TTL; the least recently used entries are evicted when the
+ * total size of the cached responses exceeds the configured number of bytes.
+ */
+@Component
+public class StepResponseCache {
+
+	private Logger logger = Logger.getLogger(StepResponseCache.class);
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	@Value("${pipelines.step-cache.enabled:true}")
+	boolean enabled;
+
+	/**
+	 * Maximum number of bytes held by the cached responses.
+	 */
+	@Value("${pipelines.step-cache.max-size:67108864}")
+	long maxSize;
+
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	private long size = 0;
+
+	private long hits = 0;
+
+	private long misses = 0;
+
+	private long evictions = 0;
+
+	/**
+	 * @return true if the response to the request may be cached
+	 */
+	public boolean isCacheable(SerializedRequest request) {
+		return enabled && request.getCacheTtl() != null && request.getCacheTtl() > 0;
+	}
+
+	/**
+	 * Computes the cache key of a request.
+	 * @param request	The request.
+	 * @param input		The body of the request.
+	 * @return			The key.
+	 */
+	public String key(SerializedRequest request, PipelineResponse input) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// SHA-256 is available on every Java platform
+			throw new IllegalStateException(e);
+		}
+		StringBuilder description = new StringBuilder();
+		description.append(request.getMethod()).append(' ').append(request.getEndpoint()).append('\n');
+		if (request.getParameters() != null) {
+			for (Map.Entry<String, Object> parameter : new TreeMap<>(request.getParameters()).entrySet()) {
+				description.append(parameter.getKey()).append('=').append(parameter.getValue()).append('\n');
+			}
+		}
+		description.append('\n');
+		if (request.getHeaders() != null) {
+			for (Map.Entry<String, String> header : new TreeMap<>(request.getHeaders()).entrySet()) {
+				description.append(header.getKey()).append(": ").append(header.getValue()).append('\n');
+			}
+		}
+		description.append('\n');
+		digest.update(description.toString().getBytes(StandardCharsets.UTF_8));
+		byte[] body = input != null ? input.getBodyBytes() : null;
+		if (body != null) {
+			digest.update(body);
+		}
+		StringBuilder key = new StringBuilder();
+		for (byte b : digest.digest()) {
+			key.append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Returns the cached response for a key.
+	 * @param key	The key computed by {@link #key}.
+	 * @return		The response, or null if it is not cached or has expired.
+	 */
+	public synchronized PipelineResponse get(String key) {
+		Entry entry = entries.get(key);
+		if (entry != null && entry.expiry < System.currentTimeMillis()) {
+			entries.remove(key);
+			size -= entry.body.length;
+			entry = null;
+		}
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return new PipelineResponse(entry.body, entry.contentType);
+	}
+
+	/**
+	 * Adds a response to the cache and evicts the least recently used responses when the cache exceeds its maximum
+	 * size. Responses larger than the whole cache are not stored.
+	 * @param key		The key computed by {@link #key}.
+	 * @param response	The response, with its body read into memory (see {@link PipelineResponse#buffer()}).
+	 * @param ttl		Number of seconds the response may be cached.
+	 */
+	public synchronized void put(String key, PipelineResponse response, long ttl) {
+		byte[] body = response.getBodyBytes();
+		if (body == null) {
+			body = new byte[0];
+		}
+		if (body.length > maxSize) {
+			logger.debug("response of " + body.length + " bytes is too large to be cached");
+			return;
+		}
+		Entry entry = new Entry(body, response.getContentType(), System.currentTimeMillis() + ttl * 1000);
+		Entry previous = entries.put(key, entry);
+		if (previous != null) {
+			size -= previous.body.length;
+		}
+		size += body.length;
+
+		Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		while (size > maxSize && it.hasNext()) {
+			Entry eldest = it.next().getValue();
+			if (eldest == entry) {
+				continue;
+			}
+			it.remove();
+			size -= eldest.body.length;
+			evictions++;
+		}
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		size = 0;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * @return number of cached responses
+	 */
+	public synchronized int getCount() {
+		return entries.size();
+	}
+
+	/**
+	 * @return number of bytes held by the cached responses
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	private static class Entry {
+		private final byte[] body;
+		private final String contentType;
+		private final long expiry;
+
+		Entry(byte[] body, String contentType, long expiry) {
+			this.body = body;
+			this.contentType = contentType;
+			this.expiry = expiry;
+		}
+	}
+}
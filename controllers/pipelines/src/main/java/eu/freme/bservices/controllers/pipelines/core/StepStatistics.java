@@ -0,0 +1,139 @@
+/**
+ * Copyright (C) 2015 Agro-Know, Deutsches Forschungszentrum für Künstliche Intelligenz, iMinds,
+ * Institut für Angewandte Informatik e. V. an der Universität Leipzig,
+ * Istituto Superiore Mario Boella, Tilde, Vistatec, WRIPL (http://freme-project.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.freme.bservices.controllers.pipelines.core;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timings and sizes of one step of a pipeline. All times are in nanoseconds.
+ * <ul>
+ *     <li>{@code connectTime}: time to open a new connection to the service, 0 if a pooled connection was used.</li>
+ *     <li>{@code firstByteTime}: time from sending the request until the response headers arrived.</li>
+ *     <li>{@code transferTime}: time from the response headers until the whole body was read. The body is streamed
+ *     into the next step, so this overlaps with the next step.</li>
+ *     <li>{@code conversionTime}: time to merge the NIF responses of several input steps.</li>
+ *     <li>{@code totalTime}: time until the step handed its response on.</li>
+ * </ul>
+ * When a step is sent several times because of its {@link eu.freme.common.persistence.model.StepPolicy}, the sizes
+ * add up over all attempts.
+ */
+public class StepStatistics {
+	private final int index;
+	private final String endpoint;
+	private volatile boolean cached;
+	private volatile long totalTime;
+	private volatile long connectTime;
+	private volatile long firstByteTime;
+	private volatile long transferTime;
+	private volatile long conversionTime;
+	private final AtomicLong requestBytes = new AtomicLong();
+	private final AtomicLong responseBytes = new AtomicLong();
+	private final AtomicInteger attempts = new AtomicInteger();
+
+	public StepStatistics(int index, String endpoint) {
+		this.index = index;
+		this.endpoint = endpoint;
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	public String getEndpoint() {
+		return endpoint;
+	}
+
+	/**
+	 * @return true if the response was taken from the {@link StepResponseCache}
+	 */
+	public boolean isCached() {
+		return cached;
+	}
+
+	void setCached(boolean cached) {
+		this.cached = cached;
+	}
+
+	public long getTotalTime() {
+		return totalTime;
+	}
+
+	void setTotalTime(long totalTime) {
+		this.totalTime = totalTime;
+	}
+
+	public long getConnectTime() {
+		return connectTime;
+	}
+
+	void setConnectTime(long connectTime) {
+		this.connectTime = connectTime;
+	}
+
+	public long getFirstByteTime() {
+		return firstByteTime;
+	}
+
+	void setFirstByteTime(long firstByteTime) {
+		this.firstByteTime = firstByteTime;
+	}
+
+	public long getTransferTime() {
+		return transferTime;
+	}
+
+	void setTransferTime(long transferTime) {
+		this.transferTime = transferTime;
+	}
+
+	public long getConversionTime() {
+		return conversionTime;
+	}
+
+	void setConversionTime(long conversionTime) {
+		this.conversionTime = conversionTime;
+	}
+
+	public long getRequestBytes() {
+		return requestBytes.get();
+	}
+
+	void addRequestBytes(long bytes) {
+		requestBytes.addAndGet(bytes);
+	}
+
+	public long getResponseBytes() {
+		return responseBytes.get();
+	}
+
+	void addResponseBytes(long bytes) {
+		responseBytes.addAndGet(bytes);
+	}
+
+	/**
+	 * @return number of times the request was sent, including retries and hedged requests
+	 */
+	public int getAttempts() {
+		return attempts.get();
+	}
+
+	void addAttempt() {
+		attempts.incrementAndGet();
+	}
+}
@@ -14,8 +14,17 @@ public class WrappedPipelineResponse {
 	private final PipelineResponse content;
 
 	public WrappedPipelineResponse(PipelineResponse content, Map<String, Long> executionTime, long totalExecutionTime) {
+		this(content, new Metadata(executionTime, totalExecutionTime));
+	}
+
+	public WrappedPipelineResponse(PipelineResponse content, Metadata metadata) {
 		this.content = content;
-		metadata = new Metadata(executionTime, totalExecutionTime);
+		this.metadata = metadata;
+	}
+
+	@SuppressWarnings("unused")
+	public Metadata getMetadata() {
+		return metadata;
 	}
 
 	@SuppressWarnings("unused")
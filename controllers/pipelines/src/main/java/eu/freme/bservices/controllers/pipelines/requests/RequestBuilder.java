@@ -19,8 +19,11 @@ package eu.freme.bservices.controllers.pipelines.requests;
 
 import eu.freme.common.conversion.rdf.RDFConstants;
 import eu.freme.common.persistence.model.SerializedRequest;
+import eu.freme.common.persistence.model.StepPolicy;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static eu.freme.common.conversion.rdf.RDFConstants.RDFSerialization.TURTLE;
@@ -38,6 +41,10 @@ public class RequestBuilder {
 	private RDFConstants.RDFSerialization outformat;
 	private String prefix;
 	private String body;
+	private String id;
+	private List<String> inputs;
+	private Long cacheTtl;
+	private StepPolicy policy;
 
 	private final Map<String, Object> parameters;	// some extra app-specific parameters that will be added to the URI
 	private final Map<String, String> headers;		// some extra app-specific headers.
@@ -120,6 +127,47 @@ public class RequestBuilder {
 		return this;
 	}
 
+	/**
+	 * Sets the id of the request, used by other requests of a pipeline graph to refer to its response.
+	 * @param id	The id of the request.
+	 * @return		A builder object with the id set.
+	 */
+	public RequestBuilder id(final String id) {
+		this.id = id;
+		return this;
+	}
+
+	/**
+	 * Sets the ids of the requests whose responses are the input of this request. Requests of the same pipeline
+	 * that do not depend on each other are executed in parallel.
+	 * @param inputIds	The ids of the input requests. No ids means the input of the pipeline.
+	 * @return			A builder object with the inputs set.
+	 */
+	public RequestBuilder inputs(final String... inputIds) {
+		this.inputs = Arrays.asList(inputIds);
+		return this;
+	}
+
+	/**
+	 * Lets the pipelines service cache the response of the request. Only use this for deterministic services.
+	 * @param ttl	Number of seconds the response may be cached.
+	 * @return		A builder object with caching enabled.
+	 */
+	public RequestBuilder cache(final long ttl) {
+		this.cacheTtl = ttl;
+		return this;
+	}
+
+	/**
+	 * Sets the timeout, retries and hedging of the request.
+	 * @param policy	The policy of the request.
+	 * @return			A builder object with the policy set.
+	 */
+	public RequestBuilder policy(final StepPolicy policy) {
+		this.policy = policy;
+		return this;
+	}
+
 	/**
 	 * Sets a parameter.
 	 * @param name	The name of the parameter
@@ -153,7 +201,10 @@ public class RequestBuilder {
 		if (prefix != null) {
 			parameter("prefix", prefix);
 		}
-		return new SerializedRequest(httpMethod, serviceEndpoint, parameters, headers, body);
+		SerializedRequest request = new SerializedRequest(httpMethod, serviceEndpoint, parameters, headers, body, id, inputs);
+		request.setCacheTtl(cacheTtl);
+		request.setPolicy(policy);
+		return request;
 	}
 
 }
@@ -19,9 +19,6 @@ package eu.freme.common.persistence.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.ObjectWriter;
-import com.fasterxml.jackson.databind.type.TypeFactory;
 import eu.freme.common.exception.BadRequestException;
 import eu.freme.common.exception.FREMEHttpException;
 import eu.freme.common.exception.InternalServerErrorException;
@@ -55,7 +52,10 @@ public class Pipeline extends OwnedResource {
 
 	@SuppressWarnings("unused")
 	public List<SerializedRequest> getSerializedRequests() throws IOException {
-		//deserializeRequests();
+		// deserialized when first needed, see postFetch()
+		if (serializedRequests == null && requests != null) {
+			deserializeRequests();
+		}
 		return serializedRequests;
 	}
 
@@ -105,25 +105,26 @@ public class Pipeline extends OwnedResource {
 		if (getDescription() == null) {
 			return "No description given.";
 		}
-		if (serializedRequests == null) {
+		if (getDeserializedRequests() == null) {
 			return "No requests given.";
 		}
 		return "";
 	}
 
 	public void serializeRequests() throws JsonProcessingException {
-		ObjectWriter ow = new ObjectMapper().writer().withDefaultPrettyPrinter();
-		requests = ow.writeValueAsString(serializedRequests);
+		requests = SerializedRequest.LIST_WRITER.writeValueAsString(serializedRequests);
 	}
 
 	public void deserializeRequests() throws IOException {
-		ObjectMapper mapper = new ObjectMapper();
-		serializedRequests = mapper.readValue(requests,
-				TypeFactory.defaultInstance().constructCollectionType(List.class, SerializedRequest.class));
+		serializedRequests = SerializedRequest.LIST_READER.readValue(requests);
 	}
 
 	@Override
 	public void preSave() {
+		if (serializedRequests == null) {
+			// never deserialized, so the requests are unchanged
+			return;
+		}
 		try {
 			serializeRequests();
 		} catch (JsonProcessingException e) {
@@ -131,10 +132,18 @@ public class Pipeline extends OwnedResource {
 		}
 	}
 
+	/**
+	 * The requests are not deserialized after fetching, but when first needed. Executing a template whose compiled
+	 * form is cached does not need them at all.
+	 */
 	@Override
 	public void postFetch() {
+		serializedRequests = null;
+	}
+
+	private List<SerializedRequest> getDeserializedRequests() {
 		try {
-			deserializeRequests();
+			return getSerializedRequests();
 		} catch (IOException e) {
 			throw new InternalServerErrorException("Could not deserialize requests from json: "+e.getMessage());
 		}
@@ -155,7 +164,7 @@ public class Pipeline extends OwnedResource {
 		if (!getDescription().equals(pipeline.getDescription())) return false;
 		if (getVisibility() != null ? !getVisibility().equals(pipeline.getVisibility()) : pipeline.getVisibility() != null) return false;
 		if (getOwner() != null ? !getOwner().equals(pipeline.getOwner()) : pipeline.getOwner() != null) return false;
-		return serializedRequests.equals(pipeline.serializedRequests);
+		return getDeserializedRequests().equals(pipeline.getDeserializedRequests());
 
 	}
 
@@ -168,7 +177,7 @@ public class Pipeline extends OwnedResource {
 		result = 31 * result + (persist ? 1 : 0);
 		result = 31 * result + (getVisibility() != null ? getVisibility().hashCode() : 0);
 		result = 31 * result + (getOwner() != null ? getOwner().hashCode() : 0);
-		result = 31 * result + serializedRequests.hashCode();
+		result = 31 * result + getDeserializedRequests().hashCode();
 		return result;
 	}
 
@@ -18,13 +18,20 @@
 package eu.freme.common.persistence.model;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import eu.freme.common.conversion.rdf.RDFConstants;
 import eu.freme.common.conversion.rdf.RDFSerializationFormats;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -37,12 +44,41 @@ public class SerializedRequest {
 		GET, POST
 	}
 
+	/**
+	 * Reads and writes lists of requests, the JSON format of pipelines. Readers and writers are immutable, so these
+	 * are shared instead of creating a new {@link ObjectMapper} for every (de)serialization.
+	 */
+	public static final ObjectReader LIST_READER;
+	public static final ObjectWriter LIST_WRITER;
+
+	static {
+		ObjectMapper mapper = new ObjectMapper();
+		JavaType listType = mapper.getTypeFactory().constructCollectionType(List.class, SerializedRequest.class);
+		LIST_READER = mapper.readerFor(listType);
+		LIST_WRITER = mapper.writerFor(listType).withDefaultPrettyPrinter();
+	}
+
 	private HttpMethod method;
 	private String endpoint;
 	private Map<String, Object> parameters;
 	private Map<String, String> headers;
 	private String body;
 
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	private String id;
+
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	private List<String> inputs;
+
+	/**
+	 * Number of seconds the response to this request may be cached, {@code null} if it is not cached.
+	 */
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	private Long cacheTtl;
+
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	private StepPolicy policy;
+
 	/**
 	 * Creates a single request for usage in the pipelines service.
 	 * Use the {@link RequestFactory} or {@link RequestBuilder} to create requests.
@@ -52,13 +88,31 @@ public class SerializedRequest {
 	 * @param headers		HTTP headers to add to the request.
 	 * @param body			HTTP body to add to the request. Makes only sense when method is {@code POST}, but it's possible.
 	 */
+	public SerializedRequest(HttpMethod method, String endpoint, Map<String, Object> parameters,
+							 Map<String, String> headers, String body) {
+		this(method, endpoint, parameters, headers, body, null, null);
+	}
+
+	/**
+	 * Creates a single request for usage in the pipelines service, as step of a pipeline graph.
+	 * @param method			The method of the request. Can be {@code GET} or {@code POST}.
+	 * @param endpoint	    The URI to send te request to. In other words, the service endpoint.
+	 * @param parameters	URL parameters to add to the request.
+	 * @param headers		HTTP headers to add to the request.
+	 * @param body			HTTP body to add to the request. Makes only sense when method is {@code POST}, but it's possible.
+	 * @param id			The id other requests refer to in their inputs. Can be {@code null}.
+	 * @param inputs		The ids of the requests whose responses are the input of this request. {@code null} means
+	 *                      the response of the previous request, an empty list means the input of the pipeline.
+	 */
 	@JsonCreator
 	public SerializedRequest(
 			@JsonProperty("method") HttpMethod method,
 			@JsonProperty("endpoint") String endpoint,
 			@JsonProperty("parameters") Map<String, Object> parameters,
 			@JsonProperty("headers") Map<String, String> headers,
-			@JsonProperty("body") String body) {
+			@JsonProperty("body") String body,
+			@JsonProperty("id") String id,
+			@JsonProperty("inputs") List<String> inputs) {
 		this.method = method;
 		this.endpoint = endpoint;
 		this.parameters = parameters;
@@ -69,6 +123,8 @@ public class SerializedRequest {
 			this.headers.put(header2value.getKey().toLowerCase(), header2value.getValue());
 		}
 		this.body = body;
+		this.id = id;
+		this.inputs = inputs;
 	}
 
 	public HttpMethod getMethod() {
@@ -123,6 +179,61 @@ public class SerializedRequest {
 		this.body = body;
 	}
 
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public List<String> getInputs() {
+		return inputs;
+	}
+
+	public void setInputs(List<String> inputs) {
+		this.inputs = inputs;
+	}
+
+	public Long getCacheTtl() {
+		return cacheTtl;
+	}
+
+	/**
+	 * Lets the pipelines service cache the response to this request. Only use this for services that always return
+	 * the same response for the same request.
+	 * @param cacheTtl	Number of seconds the response may be cached, {@code null} to disable caching.
+	 */
+	public void setCacheTtl(Long cacheTtl) {
+		this.cacheTtl = cacheTtl;
+	}
+
+	/**
+	 * Creates a copy of this request. Parameters, headers and inputs of the copy can be changed without affecting
+	 * this request.
+	 * @return	The copy.
+	 */
+	public SerializedRequest copy() {
+		SerializedRequest copy = new SerializedRequest(method, endpoint,
+				parameters != null ? new HashMap<>(parameters) : new HashMap<String, Object>(),
+				headers, body, id, inputs != null ? new ArrayList<>(inputs) : null);
+		copy.setCacheTtl(cacheTtl);
+		copy.setPolicy(policy != null ? policy.copy() : null);
+		return copy;
+	}
+
+	public StepPolicy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Sets the timeout, retries and hedging of this request.
+	 * @param policy	The policy, {@code null} to send the request once and wait for the response.
+	 */
+	public void setPolicy(StepPolicy policy) {
+		this.policy = policy;
+	}
+
 	public String isValid() {
 		if (endpoint == null) {
 			return "No endpoint given.";
@@ -185,6 +296,10 @@ public class SerializedRequest {
 		if (!endpoint.equals(request.endpoint)) return false;
 		if (parameters != null ? !parameters.equals(request.parameters) : request.parameters != null) return false;
 		if (headers != null ? !headers.equals(request.headers) : request.headers != null) return false;
+		if (id != null ? !id.equals(request.id) : request.id != null) return false;
+		if (inputs != null ? !inputs.equals(request.inputs) : request.inputs != null) return false;
+		if (cacheTtl != null ? !cacheTtl.equals(request.cacheTtl) : request.cacheTtl != null) return false;
+		if (policy != null ? !policy.equals(request.policy) : request.policy != null) return false;
 		return !(body != null ? !body.equals(request.body) : request.body != null);
 
 	}
@@ -196,6 +311,10 @@ public class SerializedRequest {
 		result = 31 * result + (parameters != null ? parameters.hashCode() : 0);
 		result = 31 * result + (headers != null ? headers.hashCode() : 0);
 		result = 31 * result + (body != null ? body.hashCode() : 0);
+		result = 31 * result + (id != null ? id.hashCode() : 0);
+		result = 31 * result + (inputs != null ? inputs.hashCode() : 0);
+		result = 31 * result + (cacheTtl != null ? cacheTtl.hashCode() : 0);
+		result = 31 * result + (policy != null ? policy.hashCode() : 0);
 		return result;
 	}
 }
@@ -0,0 +1,115 @@
+/**
+ * Copyright (C) 2015 Agro-Know, Deutsches Forschungszentrum für Künstliche Intelligenz, iMinds,
+ * Institut für Angewandte Informatik e. V. an der Universität Leipzig,
+ * Istituto Superiore Mario Boella, Tilde, Vistatec, WRIPL (http://freme-project.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.freme.common.persistence.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * How the pipelines service deals with a slow or failing service for a single request. All values are optional.
+ *
+ * @see SerializedRequest#setPolicy(StepPolicy)
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class StepPolicy {
+	private Integer timeout;
+	private Integer retries;
+	private Long backoff;
+	private Double hedgePercentile;
+
+	public StepPolicy() {
+	}
+
+	/**
+	 * @return	Number of milliseconds to wait for the response headers of the service, after which the request fails.
+	 */
+	public Integer getTimeout() {
+		return timeout;
+	}
+
+	public void setTimeout(Integer timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * @return	Number of times the request is sent again after a connection error, a timeout or a 5xx response.
+	 * 			Only set this for services that may safely receive the same request twice. Limited by the setting
+	 * 			{@code pipelines.retry.max-retries}, and all attempts together by {@code pipelines.step.deadline}.
+	 */
+	public Integer getRetries() {
+		return retries;
+	}
+
+	public void setRetries(Integer retries) {
+		this.retries = retries;
+	}
+
+	/**
+	 * @return	Number of milliseconds to wait before the first retry; the wait doubles with every further retry,
+	 * 			up to the setting {@code pipelines.retry.max-backoff}.
+	 */
+	public Long getBackoff() {
+		return backoff;
+	}
+
+	public void setBackoff(Long backoff) {
+		this.backoff = backoff;
+	}
+
+	/**
+	 * @return	Percentile of the response times of the endpoint (e.g. 95) after which a second, duplicate request is
+	 * 			sent. The first response of both is used.
+	 */
+	public Double getHedgePercentile() {
+		return hedgePercentile;
+	}
+
+	public void setHedgePercentile(Double hedgePercentile) {
+		this.hedgePercentile = hedgePercentile;
+	}
+
+	public StepPolicy copy() {
+		StepPolicy copy = new StepPolicy();
+		copy.timeout = timeout;
+		copy.retries = retries;
+		copy.backoff = backoff;
+		copy.hedgePercentile = hedgePercentile;
+		return copy;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+
+		StepPolicy policy = (StepPolicy) o;
+
+		if (timeout != null ? !timeout.equals(policy.timeout) : policy.timeout != null) return false;
+		if (retries != null ? !retries.equals(policy.retries) : policy.retries != null) return false;
+		if (backoff != null ? !backoff.equals(policy.backoff) : policy.backoff != null) return false;
+		return !(hedgePercentile != null ? !hedgePercentile.equals(policy.hedgePercentile) : policy.hedgePercentile != null);
+	}
+
+	@Override
+	public int hashCode() {
+		int result = timeout != null ? timeout.hashCode() : 0;
+		result = 31 * result + (retries != null ? retries.hashCode() : 0);
+		result = 31 * result + (backoff != null ? backoff.hashCode() : 0);
+		result = 31 * result + (hedgePercentile != null ? hedgePercentile.hashCode() : 0);
+		return result;
+	}
+}
@@ -0,0 +1,31 @@
+package eu.freme.bservices.controllers.pipelines;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Mockup service that answers with the sorted, comma separated names of the query parameters it received, to test
+ * which parameters a pipeline forwards to its requests. Picked up by the component scan of the pipelines configuration.
+ */
+@RestController
+public class ParameterMockupEndpoint {
+
+    public static final String path = "/mockups/parameters";
+
+    @RequestMapping(value = path, method = RequestMethod.POST)
+    public ResponseEntity<String> parameterNames(
+            @RequestParam Map<String, String> parameters
+    ) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("Content-Type", "text/plain");
+        return new ResponseEntity<>(String.join(",", new TreeSet<>(parameters.keySet())), headers, HttpStatus.OK);
+    }
+}
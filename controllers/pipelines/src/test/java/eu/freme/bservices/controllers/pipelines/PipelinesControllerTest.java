@@ -1,6 +1,7 @@
 package eu.freme.bservices.controllers.pipelines;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
 import com.mashape.unirest.http.HttpResponse;
@@ -17,6 +18,7 @@ import eu.freme.common.persistence.dao.UserDAO;
 import eu.freme.common.persistence.model.OwnedResource;
 import eu.freme.common.persistence.model.Pipeline;
 import eu.freme.common.persistence.model.SerializedRequest;
+import eu.freme.common.persistence.model.StepPolicy;
 import eu.freme.common.persistence.model.User;
 import org.apache.http.HttpStatus;
 import org.apache.log4j.Logger;
@@ -128,6 +130,48 @@ public class PipelinesControllerTest {
         ormh.deleteEntity(pipeline.getIdentifier(), ath.getTokenWithPermission(), org.springframework.http.HttpStatus.OK);
     }
 
+    @Test
+    public void testStatsParameterNotForwarded() throws UnirestException, IOException {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("content-type", RDFConstants.RDFSerialization.PLAINTEXT.contentType());
+        SerializedRequest request = new SerializedRequest(SerializedRequest.HttpMethod.POST, ath.getAPIBaseUrl() + ParameterMockupEndpoint.path,
+                new HashMap<String, Object>(), headers, null);
+        Pipeline pipeline = createTemplate(OwnedResource.Visibility.PUBLIC, "a label", "a description", request);
+
+        HttpResponse<String> response = ath.addAuthentication(Unirest.post(ath.getAPIBaseUrl() + serviceUrl + "/chain/" + pipeline.getIdentifier()), ath.getTokenWithPermission())
+                .queryString("stats", "false")
+                .queryString("language", "en")
+                .header("content-type", RDFConstants.RDFSerialization.PLAINTEXT.contentType())
+                .body("The Atomium in Brussels is the symbol of Belgium.")
+                .asString();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+        assertEquals("language", response.getBody());
+        ormh.deleteEntity(pipeline.getIdentifier(), ath.getTokenWithPermission(), org.springframework.http.HttpStatus.OK);
+    }
+
+    @Test
+    public void testExecuteBatch() throws UnirestException, IOException {
+        Pipeline pipeline = createDefaultTemplate(OwnedResource.Visibility.PUBLIC);
+        String documents = "{\"id\":\"atomium\",\"body\":\"The Atomium in Brussels is the symbol of Belgium.\"}\n"
+                + "{\"id\":\"zomerbar\",\"body\":\"This summer there is the Zomerbar in Antwerp.\"}\n";
+        HttpResponse<String> response = ath.addAuthentication(Unirest.post(ath.getAPIBaseUrl() + serviceUrl + "/chain/" + pipeline.getIdentifier() + "/batch"), ath.getTokenWithPermission())
+                .queryString("informat", RDFConstants.RDFSerialization.PLAINTEXT.contentType())
+                .header("content-type", "application/x-ndjson")
+                .body(documents)
+                .asString();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+
+        Set<String> ids = new HashSet<>();
+        for (String line : response.getBody().split("\n")) {
+            JsonNode result = new ObjectMapper().readTree(line);
+            assertEquals(HttpStatus.SC_OK, result.get("status").asInt());
+            assertTrue(result.has("body"));
+            ids.add(result.get("id").asText());
+        }
+        assertEquals(new HashSet<>(Arrays.asList("atomium", "zomerbar")), ids);
+        ormh.deleteEntity(pipeline.getIdentifier(), ath.getTokenWithPermission(), org.springframework.http.HttpStatus.OK);
+    }
+
     @Test
     public void testExecuteDefaultSingle() throws JsonProcessingException, UnirestException {
         SerializedRequest entityRequest = rf.createEntitySpotlight("en");
@@ -175,6 +219,215 @@ public class PipelinesControllerTest {
         sendRequest(HttpStatus.SC_OK, input, entityRequest, linkRequest, terminologyRequest);
     }
 
+    /**
+     * e-Entity and e-Terminology both work on the input of the pipeline, e-Link gets the union of their results.
+     */
+    @Test
+    public void testPipelineGraph() throws UnirestException, JsonProcessingException {
+        String data = "This summer there is the Zomerbar in Antwerp, one of the most beautiful cities in Belgium.";
+        SerializedRequest entityRequest = rf.createEntitySpotlight("en");
+        entityRequest.setId("entity");
+        entityRequest.setInputs(new ArrayList<>());
+        SerializedRequest terminologyRequest = rf.createTerminology("en", "nl");
+        terminologyRequest.setId("terminology");
+        terminologyRequest.setInputs(new ArrayList<>());
+        SerializedRequest linkRequest = rf.createLink("3");	// Geo pos
+        linkRequest.setInputs(Arrays.asList("entity", "terminology"));
+
+        sendRequest(HttpStatus.SC_OK, data, entityRequest, terminologyRequest, linkRequest);
+
+        linkRequest.setInputs(Arrays.asList("entity", "unknown"));
+        LoggingHelper.loggerIgnore("eu.freme.common.exception.BadRequestException");
+        sendRequest(HttpStatus.SC_BAD_REQUEST, data, entityRequest, terminologyRequest, linkRequest);
+        LoggingHelper.loggerUnignore("eu.freme.common.exception.BadRequestException");
+    }
+
+    @Test
+    public void testPipelineAsync() throws UnirestException, IOException {
+        String data = "This summer there is the Zomerbar in Antwerp, one of the most beautiful cities in Belgium.";
+        SerializedRequest entityRequest = rf.createEntitySpotlight("en");
+        SerializedRequest linkRequest = rf.createLink("3");	// Geo pos
+        entityRequest.setBody(data);
+        String body = new ObjectMapper().writer().writeValueAsString(Arrays.asList(entityRequest, linkRequest));
+
+        HttpResponse<String> response = ath.addAuthentication(Unirest.post(ath.getAPIBaseUrl() + serviceUrl + "/chain/async"), ath.getTokenWithPermission())
+                .header("content-type", RDFConstants.RDFSerialization.JSON.contentType())
+                .body(body)
+                .asString();
+        assertEquals(HttpStatus.SC_ACCEPTED, response.getStatus());
+        String jobId = new ObjectMapper().readTree(response.getBody()).get("id").asText();
+        assertEquals(serviceUrl + "/jobs/" + jobId, response.getHeaders().getFirst("location"));
+
+        response = ath.addAuthentication(Unirest.get(ath.getAPIBaseUrl() + serviceUrl + "/jobs/" + jobId + "/result"), ath.getTokenWithPermission()).asString();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+        assertEquals(getContentTypeOfLastResponse(Arrays.asList(entityRequest, linkRequest)),
+                RDFConstants.RDFSerialization.fromValue(response.getHeaders().getFirst("content-type")));
+
+        response = ath.addAuthentication(Unirest.get(ath.getAPIBaseUrl() + serviceUrl + "/jobs/" + jobId), ath.getTokenWithPermission()).asString();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+        assertEquals("DONE", new ObjectMapper().readTree(response.getBody()).get("status").asText());
+
+        // the job and its result are only visible to the user who submitted it, and to administrators
+        LoggingHelper.loggerIgnore(LoggingHelper.accessDeniedExceptions);
+        response = ath.addAuthentication(Unirest.get(ath.getAPIBaseUrl() + serviceUrl + "/jobs/" + jobId), ath.getTokenWithoutPermission()).asString();
+        assertEquals(HttpStatus.SC_FORBIDDEN, response.getStatus());
+        response = ath.addAuthentication(Unirest.get(ath.getAPIBaseUrl() + serviceUrl + "/jobs/" + jobId + "/result"), ath.getTokenWithoutPermission()).asString();
+        assertEquals(HttpStatus.SC_FORBIDDEN, response.getStatus());
+        LoggingHelper.loggerUnignore(LoggingHelper.accessDeniedExceptions);
+        response = ath.addAuthentication(Unirest.get(ath.getAPIBaseUrl() + serviceUrl + "/jobs/" + jobId), ath.getTokenAdmin()).asString();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+
+        response = Unirest.get(ath.getAPIBaseUrl() + serviceUrl + "/jobs/unknown").asString();
+        assertEquals(HttpStatus.SC_NOT_FOUND, response.getStatus());
+    }
+
+    @Test
+    public void testStepCache() throws UnirestException, IOException {
+        String data = "This summer there is the Zomerbar in Antwerp, one of the most beautiful cities in Belgium.";
+        SerializedRequest entityRequest = rf.createEntitySpotlight("en");
+        entityRequest.setCacheTtl(60L);
+        entityRequest.setBody(data);
+        SerializedRequest linkRequest = rf.createLink("3");	// Geo pos
+        String body = new ObjectMapper().writer().writeValueAsString(Arrays.asList(entityRequest, linkRequest));
+
+        for (int i = 0; i < 2; i++) {
+            HttpResponse<String> response = Unirest.post(ath.getAPIBaseUrl() + serviceUrl + "/chain")
+                    .queryString("stats", "true")
+                    .header("content-type", RDFConstants.RDFSerialization.JSON.contentType())
+                    .body(body)
+                    .asString();
+            assertEquals(HttpStatus.SC_OK, response.getStatus());
+            JsonNode metadata = new ObjectMapper().readTree(response.getBody()).get("metadata");
+            JsonNode executionTime = metadata.get("executionTime");
+            // the first call fills the cache, the second one is answered from it
+            assertEquals(i == 1, executionTime.has(entityRequest.getEndpoint() + " (cached)"));
+            assertFalse(executionTime.has(linkRequest.getEndpoint() + " (cached)"));
+
+            JsonNode steps = metadata.get("steps");
+            assertEquals(2, steps.size());
+            assertEquals(i == 1, steps.get(0).get("cached").asBoolean());
+            assertTrue(steps.get(0).get("requestBytes").asLong() > 0 || i == 1);
+            assertTrue(steps.get(1).get("responseBytes").asLong() > 0);
+        }
+    }
+
+    @Test
+    public void testStepPolicy() throws UnirestException, IOException {
+        StepPolicy policy = new StepPolicy();
+        policy.setTimeout(30000);
+        policy.setRetries(2);
+        policy.setBackoff(10L);
+
+        String data = "This summer there is the Zomerbar in Antwerp, one of the most beautiful cities in Belgium.";
+        SerializedRequest entityRequest = rf.createEntitySpotlight("en");
+        entityRequest.setPolicy(policy);
+        entityRequest.setBody(data);
+        String body = new ObjectMapper().writer().writeValueAsString(Collections.singletonList(entityRequest));
+        HttpResponse<String> response = Unirest.post(ath.getAPIBaseUrl() + serviceUrl + "/chain")
+                .queryString("stats", "true")
+                .header("content-type", RDFConstants.RDFSerialization.JSON.contentType())
+                .body(body)
+                .asString();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+        JsonNode steps = new ObjectMapper().readTree(response.getBody()).get("metadata").get("steps");
+        assertEquals(1, steps.get(0).get("attempts").asInt());
+
+        // every call is retried twice, until the circuit breaker of the endpoint opens after 5 failures
+        SerializedRequest unreachable = new SerializedRequest(SerializedRequest.HttpMethod.POST, "http://localhost:1/unreachable",
+                new HashMap<String, Object>(), new HashMap<String, String>(), data);
+        unreachable.setPolicy(policy);
+        body = new ObjectMapper().writer().writeValueAsString(Collections.singletonList(unreachable));
+        List<Integer> statuses = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            statuses.add(Unirest.post(ath.getAPIBaseUrl() + serviceUrl + "/chain")
+                    .header("content-type", RDFConstants.RDFSerialization.JSON.contentType())
+                    .body(body)
+                    .asString().getStatus());
+        }
+        assertEquals(Arrays.asList(HttpStatus.SC_INTERNAL_SERVER_ERROR, HttpStatus.SC_SERVICE_UNAVAILABLE, HttpStatus.SC_SERVICE_UNAVAILABLE), statuses);
+    }
+
+    @Test
+    public void testStepRetryLimits() throws UnirestException, IOException {
+        // the waits between the retries are capped by pipelines.retry.max-backoff, so the circuit breaker of the
+        // endpoint opens after a few failures instead of the step waiting for days
+        StepPolicy policy = new StepPolicy();
+        policy.setRetries(1000);
+        policy.setBackoff(Long.MAX_VALUE >> 2);
+        SerializedRequest unreachable = new SerializedRequest(SerializedRequest.HttpMethod.POST, "http://localhost:1/retry-limits",
+                new HashMap<String, Object>(), new HashMap<String, String>(), "The Atomium in Brussels is the symbol of Belgium.");
+        unreachable.setPolicy(policy);
+
+        long start = System.currentTimeMillis();
+        HttpResponse<String> response = sendChain(unreachable);
+        assertEquals(HttpStatus.SC_SERVICE_UNAVAILABLE, response.getStatus());
+        assertTrue(System.currentTimeMillis() - start < 10000);
+    }
+
+    @Test
+    public void testStepTimeout() throws UnirestException, IOException {
+        StepPolicy policy = new StepPolicy();
+        policy.setTimeout(500);
+        SerializedRequest request = createSlowRequest("timeout", policy);
+
+        delayNextSlowRequest("timeout", 5000);
+        long start = System.currentTimeMillis();
+        HttpResponse<String> response = sendChain(request);
+        assertEquals(HttpStatus.SC_INTERNAL_SERVER_ERROR, response.getStatus());
+        assertTrue(System.currentTimeMillis() - start < 5000);
+
+        // the next request is not delayed
+        response = sendChain(request);
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+    }
+
+    @Test
+    public void testStepHedging() throws UnirestException, IOException {
+        StepPolicy policy = new StepPolicy();
+        policy.setHedgePercentile(90.0);
+        SerializedRequest request = createSlowRequest("hedging", policy);
+
+        // requests are hedged once enough of them were timed
+        for (int i = 0; i < 25; i++) {
+            HttpResponse<String> response = sendChain(request);
+            assertEquals(HttpStatus.SC_OK, response.getStatus());
+        }
+
+        // the first attempt is slow, the second one answers right away
+        delayNextSlowRequest("hedging", 5000);
+        long start = System.currentTimeMillis();
+        HttpResponse<String> response = sendChain(request);
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        JsonNode steps = new ObjectMapper().readTree(response.getBody()).get("metadata").get("steps");
+        assertEquals(2, steps.get(0).get("attempts").asInt());
+    }
+
+    private SerializedRequest createSlowRequest(String name, StepPolicy policy) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("content-type", RDFConstants.RDFSerialization.PLAINTEXT.contentType());
+        SerializedRequest request = new SerializedRequest(SerializedRequest.HttpMethod.POST, ath.getAPIBaseUrl() + SlowMockupEndpoint.path + "/" + name,
+                new HashMap<String, Object>(), headers, "The Atomium in Brussels is the symbol of Belgium.");
+        request.setPolicy(policy);
+        return request;
+    }
+
+    private void delayNextSlowRequest(String name, long millis) throws UnirestException {
+        HttpResponse<String> response = Unirest.post(ath.getAPIBaseUrl() + SlowMockupEndpoint.path + "/" + name + "/delay")
+                .queryString("millis", millis)
+                .asString();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+    }
+
+    private HttpResponse<String> sendChain(SerializedRequest request) throws UnirestException, JsonProcessingException {
+        String body = new ObjectMapper().writer().writeValueAsString(Collections.singletonList(request));
+        return Unirest.post(ath.getAPIBaseUrl() + serviceUrl + "/chain")
+                .queryString("stats", "true")
+                .header("content-type", RDFConstants.RDFSerialization.JSON.contentType())
+                .body(body)
+                .asString();
+    }
+
     //// test pipeline with link
 
     @Test
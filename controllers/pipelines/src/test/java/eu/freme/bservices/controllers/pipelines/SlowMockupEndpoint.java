@@ -0,0 +1,54 @@
+package eu.freme.bservices.controllers.pipelines;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Mockup service that answers with the body of the request, to test timeouts and hedged requests. Each call to
+ * {@code /delay} makes the next request to the service wait for the given time before it answers. Picked up by the
+ * component scan of the pipelines configuration.
+ */
+@RestController
+public class SlowMockupEndpoint {
+
+    public static final String path = "/mockups/slow";
+
+    private final Map<String, Long> delays = new ConcurrentHashMap<>();
+
+    @RequestMapping(value = path + "/{name}/delay", method = RequestMethod.POST)
+    public ResponseEntity<String> delayNext(
+            @PathVariable String name,
+            @RequestParam long millis
+    ) {
+        delays.put(name, millis);
+        return new ResponseEntity<>(HttpStatus.OK);
+    }
+
+    @RequestMapping(value = path + "/{name}", method = RequestMethod.POST)
+    public ResponseEntity<String> echo(
+            @PathVariable String name,
+            @RequestHeader(value = "content-type", required = false) String contentType,
+            @RequestBody(required = false) String body
+    ) throws InterruptedException {
+        Long delay = delays.remove(name);
+        if (delay != null) {
+            Thread.sleep(delay);
+        }
+        HttpHeaders headers = new HttpHeaders();
+        if (contentType != null) {
+            headers.add("Content-Type", contentType);
+        }
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
+    }
+}
@@ -0,0 +1,63 @@
+package eu.freme.bservices.controllers.pipelines;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import eu.freme.bservices.controllers.pipelines.requests.RequestFactory;
+import eu.freme.common.persistence.model.SerializedRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compares the throughput of parsing pipeline templates with a new {@link ObjectMapper} per call, as done before,
+ * to the shared {@link SerializedRequest#LIST_READER}. This is not a unit test; run it with the main method
+ * after compiling the test classes.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class TemplateParseBenchmark {
+
+    private String template;
+
+    @Setup
+    public void setup() throws IOException {
+        List<SerializedRequest> requests = Arrays.asList(
+                RequestFactory.createEntitySpotlight("en"),
+                RequestFactory.createLink("3"),
+                RequestFactory.createTerminology("en", "nl"));
+        ObjectWriter ow = new ObjectMapper().writer().withDefaultPrettyPrinter();
+        template = ow.writeValueAsString(requests);
+    }
+
+    @Benchmark
+    public List<SerializedRequest> newObjectMapper() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        return mapper.readValue(template,
+                TypeFactory.defaultInstance().constructCollectionType(List.class, SerializedRequest.class));
+    }
+
+    @Benchmark
+    public List<SerializedRequest> sharedReader() throws IOException {
+        return SerializedRequest.LIST_READER.readValue(template);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TemplateParseBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
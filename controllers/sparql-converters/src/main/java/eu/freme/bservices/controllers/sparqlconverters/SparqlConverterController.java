@@ -6,6 +6,7 @@ import com.hp.hpl.jena.query.Query;
 import com.hp.hpl.jena.query.ResultSet;
 import com.hp.hpl.jena.query.ResultSetFormatter;
 import com.hp.hpl.jena.rdf.model.Model;
+import eu.freme.bservices.filters.internationalizationfilter.InternationalizationFilter;
 import eu.freme.common.conversion.SerializationFormatMapper;
 import eu.freme.common.conversion.rdf.JenaRDFConversionService;
 import eu.freme.common.exception.BadRequestException;
@@ -26,6 +27,7 @@ import org.springframework.security.access.annotation.Secured;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletRequest;
 import java.io.ByteArrayOutputStream;
 import java.util.Map;
 
@@ -66,7 +68,8 @@ public class SparqlConverterController extends BaseRestController {
             @RequestHeader(value = "Accept", required = false) String acceptHeader,
             @RequestHeader(value = "Content-Type", required = false) String contentTypeHeader,
             @RequestBody(required = false) String postBody,
-            @RequestParam Map<String, String> allParams
+            @RequestParam Map<String, String> allParams,
+            HttpServletRequest request
     ){
         try {
             NIFParameterSet nifParameters = this.normalizeNif(postBody,
@@ -74,8 +77,15 @@ public class SparqlConverterController extends BaseRestController {
 
             SparqlConverter sparqlConverter = entityDAO.findOneByIdentifier(identifier);
 
-            Model model = jenaRDFConversionService.unserializeRDF(
-                    nifParameters.getInput(), nifParameters.getInformat());
+            Model model;
+            Object handoff = request.getAttribute(InternationalizationFilter.NIF_MODEL_ATTRIBUTE);
+            if(handoff instanceof Model){
+                // the request was converted by the e-Internationalization filter, use its model
+                model = (Model) handoff;
+            }else {
+                model = jenaRDFConversionService.unserializeRDF(
+                        nifParameters.getInput(), nifParameters.getInformat());
+            }
 
             String serialization = null;
             switch (sparqlConverter.getQueryType()){
@@ -2,6 +2,7 @@ package eu.freme.bservices.controllers.sparqlconverters;
 
 import com.hp.hpl.jena.query.*;
 import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
 import com.hp.hpl.jena.rdf.model.ResourceFactory;
 import com.mashape.unirest.http.HttpResponse;
 import com.mashape.unirest.http.Unirest;
@@ -162,4 +163,31 @@ public class SparqlConverterControllerTest {
         ormh.deleteEntity("sparqlConverter2", ath.getTokenWithPermission(), HttpStatus.OK);
      }
 
+    @Test
+    public void testModelHandoff() throws Exception {
+        ormh.createEntity(
+                new SimpleEntityRequest(sparqlConverterConstruct)
+                        .putParameter(SparqlConverterManagingController.identifierParameterName, "sparqlConverter3"),
+                ath.getTokenWithPermission(), HttpStatus.OK);
+
+        Model handoff = ModelFactory.createDefaultModel();
+        handoff.add(ResourceFactory.createResource("http://127.0.0.1:9995/spotlight#char=8,14"),
+                ResourceFactory.createProperty(propertyIdentifier),
+                ResourceFactory.createResource(resourceIdentifier));
+        NifModelHandoffTestFilter.setModel(handoff);
+
+        // the body is no valid turtle, so the request only succeeds if the model of the attribute is used
+        HttpResponse<String> response = Unirest.post(ath.getAPIBaseUrl() + serviceUrl + "/documents/sparqlConverter3")
+                .queryString("informat", RDFConstants.RDFSerialization.TURTLE.contentType())
+                .queryString("outformat", RDFConstants.RDFSerialization.TURTLE.contentType())
+                .header(NifModelHandoffTestFilter.HEADER, "true")
+                .body("this is not turtle")
+                .asString();
+        assertEquals(HttpStatus.OK.value(), response.getStatus());
+        Model resultModel = new JenaRDFConversionService().unserializeRDF(response.getBody(), RDFConstants.RDFSerialization.TURTLE);
+        assertTrue(resultModel.isIsomorphicWith(handoff));
+
+        ormh.deleteEntity("sparqlConverter3", ath.getTokenWithPermission(), HttpStatus.OK);
+    }
+
 }
\ No newline at end of file
@@ -19,6 +19,7 @@ package eu.freme.bservices.filters.internationalizationfilter;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
 import java.util.Collections;
 import java.util.Enumeration;
@@ -36,6 +37,8 @@ public class BodySwappingServletRequest extends HttpServletRequestWrapper {
 
 	private Reader body;
 
+	private ServletInputStreamWrapper inputStream;
+
 	/**
 	 * When this flag is set to true then the parameter "outformat" will be
 	 * overriden by turtle. This is used for roundtripping. The
@@ -56,7 +59,10 @@ public class BodySwappingServletRequest extends HttpServletRequestWrapper {
 	}
 
 	public ServletInputStream getInputStream() {
-		return new ServletInputStreamWrapper(body);
+		if (inputStream == null) {
+			inputStream = new ServletInputStreamWrapper(body);
+		}
+		return inputStream;
 	}
 
 	@Override
@@ -97,37 +103,119 @@ public class BodySwappingServletRequest extends HttpServletRequestWrapper {
 		return getParameterMap().get(name);
 	}
 
+	/**
+	 * Exposes the body as stream. The converted body is held by the filter, so
+	 * reads never block and a registered ReadListener is notified right away.
+	 */
 	private class ServletInputStreamWrapper extends ServletInputStream {
 
-		private boolean finished = false;
-		private ReaderInputStream ris;
+		/** Set when the underlying stream reached its end. */
+		private boolean eof = false;
+		private boolean allDataReadNotified = false;
+		private InputStream ris;
+		private byte[] buffer = new byte[8192];
+		private int pos = 0;
+		private int count = 0;
+		private ReadListener readListener;
 
 		ServletInputStreamWrapper(Reader reader) {
-			ris = new ReaderInputStream(reader);
+			ris = new ReaderInputStream(reader, "UTF-8");
+		}
+
+		/**
+		 * Reads the next chunk of the body once the buffer is consumed. Called
+		 * after each read as well, so that {@link #isFinished()} is true as
+		 * soon as the last byte has been read.
+		 */
+		private void fill() throws IOException {
+			while (pos == count && !eof) {
+				int n = ris.read(buffer, 0, buffer.length);
+				if (n == -1) {
+					eof = true;
+					ris.close();
+				} else {
+					pos = 0;
+					count = n;
+				}
+			}
+		}
+
+		/**
+		 * Notifies the listener, once, that the whole body has been read.
+		 */
+		private void notifyAllDataRead() throws IOException {
+			if (readListener != null && !allDataReadNotified) {
+				allDataReadNotified = true;
+				readListener.onAllDataRead();
+			}
 		}
 
 		@Override
 		public int read() throws IOException {
-			int i = ris.read();
-			if (i == -1) {
-				finished = true;
-				ris.close();
+			fill();
+			if (isFinished()) {
+				notifyAllDataRead();
+				return -1;
 			}
-			return i;
+			int b = buffer[pos++] & 0xff;
+			fill();
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			fill();
+			if (isFinished()) {
+				notifyAllDataRead();
+				return -1;
+			}
+			int n = Math.min(len, count - pos);
+			System.arraycopy(buffer, pos, b, off, n);
+			pos += n;
+			fill();
+			return n;
+		}
+
+		@Override
+		public int available() {
+			return count - pos;
 		}
 
 		@Override
 		public boolean isFinished() {
-			return finished;
+			return eof && pos == count;
 		}
 
 		@Override
 		public boolean isReady() {
-			return !finished;
+			return true;
 		}
 
 		@Override
 		public void setReadListener(ReadListener listener) {
+			if (listener == null) {
+				throw new NullPointerException("listener");
+			}
+			if (readListener != null) {
+				throw new IllegalStateException("ReadListener already set");
+			}
+			readListener = listener;
+			try {
+				fill();
+				if (!isFinished()) {
+					listener.onDataAvailable();
+				}
+				// the listener may have read the whole body without reading
+				// the end of the stream
+				if (isFinished()) {
+					notifyAllDataRead();
+				}
+			} catch (Throwable t) {
+				listener.onError(t);
+			}
 		}
 
 	}
@@ -1,11 +1,11 @@
 package eu.freme.bservices.filters.internationalizationfilter;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.io.Writer;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.WriteListener;
@@ -13,9 +13,7 @@ import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpServletResponseWrapper;
 
 import eu.freme.bservices.internationalization.api.InternationalizationAPI;
-import org.apache.commons.io.input.ReaderInputStream;
-
-import eu.freme.bservices.internationalization.okapi.nif.converter.ConversionException;
+import org.apache.commons.io.IOUtils;
 
 /**
  * ConversionHttpServletResponseWrapper collects the response of a normal API
@@ -27,53 +25,82 @@ import eu.freme.bservices.internationalization.okapi.nif.converter.ConversionExc
 public class ConversionHttpServletResponseWrapper extends
 		HttpServletResponseWrapper {
 
+	private static final String CONTENT_LENGTH = "Content-Length";
+
 	/*
-	 * this reader holds the input of the original request represented in turtle
+	 * this stream holds the input of the original request represented in turtle
 	 */
 	InputStream markupInTurtle;
 
 	/*
-	 * this stream takes original file and
+	 * this stream collects the enriched NIF written by the downstream chain
 	 */
 	DummyOutputStream conversionStream;
 
 	InternationalizationAPI api;
 
 	public ConversionHttpServletResponseWrapper(HttpServletResponse response,
-												InternationalizationAPI api, InputStream originalRequest,
-												String informat, String outformat) throws ConversionException,
-			IOException {
+												InternationalizationAPI api, InputStream markupInTurtle,
+												int memoryThreshold) {
 		super(response);
 
 		this.api = api;
-		markupInTurtle = new ReaderInputStream(api.convertToTurtleWithMarkups(
-				originalRequest, informat));
+		this.markupInTurtle = markupInTurtle;
 		//originalOutputStream = response.getOutputStream();
-		conversionStream = new DummyOutputStream();
+		conversionStream = new DummyOutputStream(memoryThreshold);
 	}
 
 	public ServletOutputStream getOutputStream() {
 		return conversionStream;
 	}
 
-	public byte[] writeBackToClient() throws IOException {
-		InputStream enrichedData = conversionStream.getInputStream();
-		Reader reader = api.convertBack(markupInTurtle, enrichedData);
-		BufferedInputStream is = new BufferedInputStream(new ReaderInputStream(
-				reader));
-		byte[] buffer = new byte[1024];
-		int read = 0;
-		long length = 0;
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		while ((read = is.read(buffer)) != -1) {
-			length += read;
-			baos.write(buffer, 0, read);
+	/**
+	 * Converts the enriched NIF back to the original format and streams it to
+	 * the client.
+	 */
+	public void writeBackToClient(OutputStream out) throws IOException {
+		try (InputStream skeleton = markupInTurtle;
+				InputStream enrichedData = conversionStream.getInputStream();
+				Reader reader = api.convertBack(skeleton, enrichedData)) {
+			Writer writer = new OutputStreamWriter(out, "UTF-8");
+			IOUtils.copy(reader, writer);
+			writer.flush();
+		} finally {
+			dispose();
+		}
+	}
+
+	/**
+	 * Deletes the buffered response. Can be called several times.
+	 */
+	public void dispose() {
+		conversionStream.dispose();
+	}
+
+	/*
+	 * The content length set by the downstream chain refers to the NIF
+	 * response, not to the document written back to the client.
+	 */
+	@Override
+	public void setContentLength(int len) {
+	}
+
+	@Override
+	public void setContentLengthLong(long len) {
+	}
+
+	@Override
+	public void setHeader(String name, String value) {
+		if (!CONTENT_LENGTH.equalsIgnoreCase(name)) {
+			super.setHeader(name, value);
+		}
+	}
+
+	@Override
+	public void addHeader(String name, String value) {
+		if (!CONTENT_LENGTH.equalsIgnoreCase(name)) {
+			super.addHeader(name, value);
 		}
-		is.close();
-		markupInTurtle.close();
-		setContentLengthLong(length);
-		
-		return baos.toByteArray();
 	}
 
 	@Override
@@ -83,7 +110,11 @@ public class ConversionHttpServletResponseWrapper extends
 
 	class DummyOutputStream extends ServletOutputStream{
 		
-		private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		private SpillingOutputStream buffer;
+
+		DummyOutputStream(int memoryThreshold) {
+			buffer = new SpillingOutputStream(memoryThreshold);
+		}
 
 		@Override
 		public boolean isReady() {
@@ -98,13 +129,22 @@ public class ConversionHttpServletResponseWrapper extends
 		public void write(int b) throws IOException {
 			buffer.write(b);
 		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			buffer.write(b, off, len);
+		}
 		
-		public InputStream getInputStream(){
-			return new ByteArrayInputStream(buffer.toByteArray());
+		public InputStream getInputStream() throws IOException{
+			return buffer.getInputStream();
 		}
 		
 		public void close() throws IOException{
 			buffer.close();
 		}
+
+		public void dispose() {
+			buffer.dispose();
+		}
 	}
 }
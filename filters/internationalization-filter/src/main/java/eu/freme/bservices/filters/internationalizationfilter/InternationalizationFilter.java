@@ -17,10 +17,9 @@
  */
 package eu.freme.bservices.filters.internationalizationfilter;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringReader;
 import java.util.HashSet;
@@ -38,6 +37,7 @@ import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import com.hp.hpl.jena.rdf.model.Model;
 import eu.freme.bservices.internationalization.api.InternationalizationAPI;
 import eu.freme.common.conversion.SerializationFormatMapper;
 import org.apache.commons.io.IOUtils;
@@ -51,6 +51,7 @@ import eu.freme.common.exception.BadRequestException;
 import eu.freme.common.exception.InternalServerErrorException;
 import eu.freme.common.exception.ExceptionHandlerService;
 import eu.freme.bservices.internationalization.okapi.nif.converter.ConversionException;
+import eu.freme.bservices.internationalization.okapi.nif.converter.NifConversionResult;
 import org.springframework.web.filter.GenericFilterBean;
 
 /**
@@ -92,6 +93,27 @@ public class InternationalizationFilter extends GenericFilterBean {
 	@Autowired
 	InternationalizationAPI internationalizationApi;
 
+	/**
+	 * Request and response documents larger than this number of bytes are
+	 * buffered in temporary files instead of memory.
+	 */
+	@Value("${freme.einternationalization.memory-threshold:1048576}")
+	int memoryThreshold;
+
+	/**
+	 * Name of the request attribute holding the NIF model of the converted
+	 * request, when the model handoff is enabled.
+	 */
+	public static final String NIF_MODEL_ATTRIBUTE = "eu.freme.bservices.internationalization.nifModel";
+
+	/**
+	 * When enabled, the NIF model of a converted request is passed to the
+	 * downstream handler as request attribute. The turtle body is then only
+	 * serialized if the handler reads it. Not used for roundtripping.
+	 */
+	@Value("${freme.einternationalization.model-handoff:false}")
+	boolean modelHandoff;
+
 	public InternationalizationFilter() {
 		roundtrippingFormats = new HashSet<>();
 		roundtrippingFormats.add(InternationalizationAPI.MIME_TYPE_HTML
@@ -258,81 +280,82 @@ public class InternationalizationFilter extends GenericFilterBean {
 		// create BodySwappingServletRequest
 
 		String inputQueryString = req.getParameter("input");
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-
-		try (InputStream requestInputStream = inputQueryString == null ? /*
-																		 * read
-																		 * data
-																		 * from
-																		 * request
-																		 * body
-																		 */req
-				.getInputStream() : /*
-									 * read data from query string input
-									 * parameter
-									 */new ReaderInputStream(new StringReader(
-				inputQueryString), "UTF-8")) {
-			// copy request content to buffer
-			IOUtils.copy(requestInputStream, baos);
-			requestInputStream.close();
-		}
-
-		// create request wrapper that converts the body of the request from the
-		// original format to turtle
-		Reader nif;
-
-		byte[] baosData = baos.toByteArray();
-		if (baosData.length == 0) {
-			Exception exception = new BadRequestException(
-					"No input data found in request.");
-			exceptionHandlerService.writeExceptionToResponse(httpRequest,
-					httpResponse, exception);
-			return;
-		}
+		// the request content is buffered once and read from that buffer by
+		// both the NIF conversion and the skeleton conversion
+		SpillingOutputStream requestBuffer = new SpillingOutputStream(
+				memoryThreshold);
+		ConversionHttpServletResponseWrapper dummyResponse = null;
 
-		ByteArrayInputStream bais = new ByteArrayInputStream(baosData);
 		try {
-			nif = internationalizationApi.convertToTurtle(bais,
-					informat.toLowerCase());
-		} catch (ConversionException e) {
-			logger.error("Error", e);
-			throw new InternalServerErrorException("Conversion from \""
-					+ informat + "\" to NIF failed");
-		} finally{
-			bais.close();
-		}
+			// read data from the request body or from the query string input
+			// parameter
+			try (InputStream requestInputStream = inputQueryString == null ? req
+					.getInputStream() : new ReaderInputStream(new StringReader(
+					inputQueryString), "UTF-8")) {
+				// copy request content to buffer
+				IOUtils.copy(requestInputStream, requestBuffer);
+			}
 
-		BodySwappingServletRequest bssr = new BodySwappingServletRequest(
-				(HttpServletRequest) req, nif, roundtripping);
+			if (requestBuffer.size() == 0) {
+				Exception exception = new BadRequestException(
+						"No input data found in request.");
+				exceptionHandlerService.writeExceptionToResponse(httpRequest,
+						httpResponse, exception);
+				return;
+			}
 
-		if (!roundtripping) {
-			chain.doFilter(bssr, res);
-			nif.close();
-			return;
-		}
+			// create request wrapper that converts the body of the request
+			// from the original format to turtle. In case of roundtripping,
+			// the skeleton is created in the same pass over the document.
+			Reader nif;
+			InputStream skeleton = null;
+			try (InputStream is = requestBuffer.getInputStream()) {
+				if (roundtripping) {
+					NifConversionResult conversion = internationalizationApi
+							.convertToTurtleWithSkeleton(is,
+									informat.toLowerCase());
+					nif = new InputStreamReader(conversion.getNif(), "UTF-8");
+					skeleton = conversion.getSkeleton();
+				} else if (modelHandoff) {
+					Model model = internationalizationApi.convertToModel(is,
+							informat.toLowerCase());
+					req.setAttribute(NIF_MODEL_ATTRIBUTE, model);
+					nif = new LazyModelReader(model);
+				} else {
+					nif = internationalizationApi.convertToTurtle(is,
+							informat.toLowerCase());
+				}
+			} catch (ConversionException e) {
+				logger.error("Error", e);
+				throw new InternalServerErrorException("Conversion from \""
+						+ informat + "\" to NIF failed");
+			}
 
-		ConversionHttpServletResponseWrapper dummyResponse;
+			BodySwappingServletRequest bssr = new BodySwappingServletRequest(
+					(HttpServletRequest) req, nif, roundtripping);
+
+			if (!roundtripping) {
+				chain.doFilter(bssr, res);
+				nif.close();
+				return;
+			}
 
-		try {
 			dummyResponse = new ConversionHttpServletResponseWrapper(
-					httpResponse, internationalizationApi,
-					new ByteArrayInputStream(baosData), informat, outformat);
+					httpResponse, internationalizationApi, skeleton,
+					memoryThreshold);
 
 			chain.doFilter(bssr, dummyResponse);
 			nif.close();
 
 			ServletOutputStream sos = httpResponse.getOutputStream();
-
-			byte[] data = dummyResponse.writeBackToClient();
-			httpResponse.setContentLength(data.length);
-			sos.write(data);
+			dummyResponse.writeBackToClient(sos);
 			sos.flush();
 			sos.close();
-
-		} catch (ConversionException e) {
-			e.printStackTrace();
-			// exceptionHandlerService.writeExceptionToResponse((HttpServletResponse)res,new
-			// InternalServerErrorException());
+		} finally {
+			requestBuffer.dispose();
+			if (dummyResponse != null) {
+				dummyResponse.dispose();
+			}
 		}
 	}
 
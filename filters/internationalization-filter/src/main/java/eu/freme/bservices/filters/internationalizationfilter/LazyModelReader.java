@@ -0,0 +1,62 @@
+/**
+ * Copyright (C) 2015 Agro-Know, Deutsches Forschungszentrum für Künstliche Intelligenz, iMinds,
+ * Institut für Angewandte Informatik e. V. an der Universität Leipzig,
+ * Istituto Superiore Mario Boella, Tilde, Vistatec, WRIPL (http://freme-project.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.freme.bservices.filters.internationalizationfilter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import com.hp.hpl.jena.rdf.model.Model;
+
+/**
+ * Reads a Jena model as turtle. The model is only serialized when the reader
+ * is read for the first time, so a downstream handler that takes the model
+ * from the request attributes never pays for the serialization.
+ */
+public class LazyModelReader extends Reader {
+
+	private final Model model;
+
+	private Reader turtle;
+
+	public LazyModelReader(Model model) {
+		this.model = model;
+	}
+
+	private Reader getTurtle() {
+		if (turtle == null) {
+			StringWriter writer = new StringWriter();
+			model.write(writer, "TTL");
+			turtle = new StringReader(writer.toString());
+		}
+		return turtle;
+	}
+
+	@Override
+	public int read(char[] cbuf, int off, int len) throws IOException {
+		return getTurtle().read(cbuf, off, len);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (turtle != null) {
+			turtle.close();
+		}
+	}
+}
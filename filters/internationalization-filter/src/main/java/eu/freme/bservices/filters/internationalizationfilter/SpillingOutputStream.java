@@ -0,0 +1,169 @@
+/**
+ * Copyright (C) 2015 Agro-Know, Deutsches Forschungszentrum für Künstliche Intelligenz, iMinds,
+ * Institut für Angewandte Informatik e. V. an der Universität Leipzig,
+ * Istituto Superiore Mario Boella, Tilde, Vistatec, WRIPL (http://freme-project.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.freme.bservices.filters.internationalizationfilter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Buffers a document passing through the internationalization filter. The
+ * document is kept in memory up to a threshold, larger documents are spilled
+ * to a temporary file. The buffered content can be read several times without
+ * being copied.
+ */
+public class SpillingOutputStream extends OutputStream {
+
+	private Logger logger = Logger.getLogger(SpillingOutputStream.class);
+
+	private final int threshold;
+
+	private MemoryBuffer memory = new MemoryBuffer();
+
+	private File file;
+
+	private OutputStream fileStream;
+
+	private long size = 0;
+
+	private boolean disposed = false;
+
+	/**
+	 * @param threshold
+	 *            number of bytes kept in memory before spilling to disk
+	 */
+	public SpillingOutputStream(int threshold) {
+		this.threshold = threshold;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (fileStream == null && size + 1 > threshold) {
+			spill();
+		}
+		if (fileStream != null) {
+			fileStream.write(b);
+		} else {
+			memory.write(b);
+		}
+		size++;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (fileStream == null && size + len > threshold) {
+			spill();
+		}
+		if (fileStream != null) {
+			fileStream.write(b, off, len);
+		} else {
+			memory.write(b, off, len);
+		}
+		size += len;
+	}
+
+	/**
+	 * Moves the content buffered so far to a temporary file. All further
+	 * writes go to that file.
+	 */
+	private void spill() throws IOException {
+		file = File.createTempFile("freme-i18n-", ".tmp");
+		logger.debug("spilling buffer to " + file);
+		fileStream = new BufferedOutputStream(new FileOutputStream(file));
+		memory.writeTo(fileStream);
+		memory = null;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if (fileStream != null) {
+			fileStream.flush();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (fileStream != null) {
+			fileStream.close();
+		}
+	}
+
+	/**
+	 * @return number of bytes written to this stream
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * @return the temporary file, or null while the content is kept in memory
+	 */
+	File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns a new stream reading the buffered content. Can be called several
+	 * times, each stream starts at the beginning of the content.
+	 */
+	public InputStream getInputStream() throws IOException {
+		if (file == null) {
+			return memory.getInputStream();
+		}
+		fileStream.flush();
+		return new BufferedInputStream(new FileInputStream(file));
+	}
+
+	/**
+	 * Deletes the temporary file, if any. Calling it again has no effect.
+	 */
+	public void dispose() {
+		if (disposed) {
+			return;
+		}
+		disposed = true;
+		try {
+			close();
+		} catch (IOException e) {
+			logger.warn("Could not close buffer file " + file, e);
+		}
+		if (file != null && file.exists() && !file.delete()) {
+			logger.warn("Could not delete temporary file: " + file);
+		}
+	}
+
+	/**
+	 * In-memory part of the buffer. Its content is read without copying the
+	 * underlying array.
+	 */
+	private static class MemoryBuffer extends ByteArrayOutputStream {
+
+		public InputStream getInputStream() {
+			return new ByteArrayInputStream(buf, 0, count);
+		}
+	}
+}
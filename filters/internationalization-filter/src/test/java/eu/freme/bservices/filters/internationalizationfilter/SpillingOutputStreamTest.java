@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2015 Agro-Know, Deutsches Forschungszentrum für Künstliche Intelligenz, iMinds,
+ * Institut für Angewandte Informatik e. V. an der Universität Leipzig,
+ * Istituto Superiore Mario Boella, Tilde, Vistatec, WRIPL (http://freme-project.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.freme.bservices.filters.internationalizationfilter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SpillingOutputStreamTest {
+
+    private static byte[] data(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+
+    private static byte[] read(SpillingOutputStream buffer) throws IOException {
+        try (InputStream is = buffer.getInputStream()) {
+            return IOUtils.toByteArray(is);
+        }
+    }
+
+    @Test
+    public void testSpillAtThreshold() throws IOException {
+        SpillingOutputStream buffer = new SpillingOutputStream(10);
+        buffer.write(data(10));
+        assertNull(buffer.getFile());
+        buffer.write(10);
+        assertNotNull(buffer.getFile());
+        assertArrayEquals(data(11), read(buffer));
+        buffer.dispose();
+    }
+
+    @Test
+    public void testReadSeveralTimes() throws IOException {
+        SpillingOutputStream inMemory = new SpillingOutputStream(100);
+        inMemory.write(data(50));
+        assertArrayEquals(data(50), read(inMemory));
+        assertArrayEquals(data(50), read(inMemory));
+        inMemory.dispose();
+
+        SpillingOutputStream spilled = new SpillingOutputStream(10);
+        spilled.write(data(50));
+        assertArrayEquals(data(50), read(spilled));
+        assertArrayEquals(data(50), read(spilled));
+        spilled.dispose();
+    }
+
+    @Test
+    public void testBulkWriteAcrossThreshold() throws IOException {
+        SpillingOutputStream buffer = new SpillingOutputStream(10);
+        byte[] data = data(25);
+        buffer.write(data, 0, 8);
+        buffer.write(data, 8, 17);
+        assertNotNull(buffer.getFile());
+        assertEquals(25, buffer.size());
+        assertArrayEquals(data, read(buffer));
+        buffer.dispose();
+    }
+
+    @Test
+    public void testSingleByteWritesAcrossThreshold() throws IOException {
+        SpillingOutputStream buffer = new SpillingOutputStream(10);
+        byte[] data = data(25);
+        for (byte b : data) {
+            buffer.write(b);
+        }
+        assertNotNull(buffer.getFile());
+        assertEquals(25, buffer.size());
+        assertArrayEquals(data, read(buffer));
+        buffer.dispose();
+    }
+
+    @Test
+    public void testDisposeDeletesFile() throws IOException {
+        SpillingOutputStream buffer = new SpillingOutputStream(10);
+        buffer.write(data(20));
+        File file = buffer.getFile();
+        assertTrue(file.exists());
+        buffer.dispose();
+        assertFalse(file.exists());
+        // disposing again has no effect
+        buffer.dispose();
+        assertFalse(file.exists());
+    }
+}
@@ -0,0 +1,23 @@
+package eu.freme.bservices.filters.ratelimiter;
+
+/**
+ * Exchanges the counters of {@link RateLimiterDistributed} between the nodes of a cluster.
+ */
+public interface ClusterTransport {
+
+    /**
+     * Starts delivering the snapshots of other nodes to the given receiver.
+     */
+    void start(Receiver receiver);
+
+    /**
+     * Sends a snapshot to all other nodes. Failures are not reported: the next snapshot replaces this one anyway.
+     */
+    void send(CounterSnapshot snapshot);
+
+    void stop();
+
+    interface Receiver {
+        void receive(CounterSnapshot snapshot);
+    }
+}
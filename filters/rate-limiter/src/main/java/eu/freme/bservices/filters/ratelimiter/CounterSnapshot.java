@@ -0,0 +1,58 @@
+package eu.freme.bservices.filters.ratelimiter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The counters of one node of a cluster, as sent to the other nodes by {@link RateLimiterDistributed}. A snapshot
+ * contains all counters of the node that are not zero, so it replaces the previous snapshot of the node.
+ */
+public class CounterSnapshot {
+
+    private String node;
+    private long sequence;
+    private Map<String, Map<String, long[]>> counters = new HashMap<>();
+
+    public CounterSnapshot() {
+    }
+
+    public CounterSnapshot(String node, long sequence, Map<String, Map<String, long[]>> counters) {
+        this.node = node;
+        this.sequence = sequence;
+        this.counters = counters;
+    }
+
+    /**
+     * @return id of the node that sent the snapshot
+     */
+    public String getNode() {
+        return node;
+    }
+
+    public void setNode(String node) {
+        this.node = node;
+    }
+
+    /**
+     * @return number of the snapshot, increasing with each snapshot of the node
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * @return number and total size of the requests in the current window, keyed by the name of the rate limit and
+     * the user
+     */
+    public Map<String, Map<String, long[]>> getCounters() {
+        return counters;
+    }
+
+    public void setCounters(Map<String, Map<String, long[]>> counters) {
+        this.counters = counters;
+    }
+}
@@ -0,0 +1,96 @@
+package eu.freme.bservices.filters.ratelimiter;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The counters of a rate limiter, one per rate limit and user. Counters are looked up by rate limit first and user
+ * second, so that no key has to be built for a request. Counters whose window is empty are dropped by
+ * {@link #evictIdle(long)}, so the table only holds the users that were active during the last time frame.
+ */
+class CounterTable {
+
+    private final ConcurrentHashMap<RateLimitRules.Rule, ConcurrentHashMap<String, SlidingWindowCounter>> counters = new ConcurrentHashMap<>();
+
+    /**
+     * @return the counter of a user for a rate limit, created if it does not exist yet
+     */
+    SlidingWindowCounter get(RateLimitRules.Rule rule, String identifier, long timeFrame) {
+        ConcurrentHashMap<String, SlidingWindowCounter> users = counters.get(rule);
+        if (users == null) {
+            ConcurrentHashMap<String, SlidingWindowCounter> newUsers = new ConcurrentHashMap<>();
+            users = counters.putIfAbsent(rule, newUsers);
+            if (users == null) {
+                users = newUsers;
+            }
+        }
+        SlidingWindowCounter counter = users.get(identifier);
+        if (counter == null) {
+            SlidingWindowCounter newCounter = new SlidingWindowCounter(timeFrame, rule.getMaxRequests(), rule.getMaxSize());
+            counter = users.putIfAbsent(identifier, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * Drops the counters without requests in the window ending at the given time. Their counts have expired, so
+     * this does not change any limit. A request that reads a counter while it is dropped may not be counted.
+     *
+     * @return number of dropped counters
+     */
+    int evictIdle(long timestamp) {
+        int evicted = 0;
+        for (Iterator<ConcurrentHashMap<String, SlidingWindowCounter>> rules = counters.values().iterator(); rules.hasNext(); ) {
+            ConcurrentHashMap<String, SlidingWindowCounter> users = rules.next();
+            for (Iterator<SlidingWindowCounter> it = users.values().iterator(); it.hasNext(); ) {
+                if (it.next().isIdle(timestamp)) {
+                    it.remove();
+                    evicted++;
+                }
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * @return number and total size of the requests in the window ending at the given time, keyed by the name of the
+     * rate limit and the user, for all counters that are not zero
+     */
+    Map<String, Map<String, long[]>> totals(long timestamp) {
+        Map<String, Map<String, long[]>> totals = new HashMap<>();
+        for (Map.Entry<RateLimitRules.Rule, ConcurrentHashMap<String, SlidingWindowCounter>> rule : counters.entrySet()) {
+            Map<String, long[]> users = new HashMap<>();
+            for (Map.Entry<String, SlidingWindowCounter> user : rule.getValue().entrySet()) {
+                long requests = user.getValue().getRequests(timestamp);
+                long size = user.getValue().getSize(timestamp);
+                if (requests > 0 || size > 0) {
+                    users.put(user.getKey(), new long[]{requests, size});
+                }
+            }
+            if (!users.isEmpty()) {
+                totals.put(rule.getKey().getName(), users);
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * @return number of counters in the table
+     */
+    int size() {
+        int size = 0;
+        for (ConcurrentHashMap<String, SlidingWindowCounter> users : counters.values()) {
+            size += users.size();
+        }
+        return size;
+    }
+
+    void clear() {
+        counters.clear();
+    }
+}
@@ -0,0 +1,176 @@
+package eu.freme.bservices.filters.ratelimiter;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import eu.freme.bservices.httpclient.HttpClientService;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sends the snapshots of {@link RateLimiterDistributed} to the other nodes via HTTP. Each node receives them with
+ * the {@link RateLimiterClusterController}. The snapshots are sent to all nodes at the same time, without waiting for
+ * the answers, so a slow node does not delay the snapshots of the others. A node that has not answered the previous
+ * snapshot yet skips the next one: each snapshot holds the whole window, so it replaces the missed one.
+ */
+@Component
+public class HttpClusterTransport implements ClusterTransport {
+
+    private static final Logger logger = Logger.getLogger(HttpClusterTransport.class);
+
+    private static final ObjectWriter SNAPSHOT_WRITER = new ObjectMapper().writerFor(CounterSnapshot.class);
+
+    public static final String SECRET_HEADER = "X-Rate-Limiter-Secret";
+
+    /**
+     * Base URLs of the other nodes, separated by commas, e.g. {@code http://node2:8080,http://node3:8080}.
+     */
+    @Value("${ratelimiter.cluster.peers:}")
+    private String peers;
+
+    /**
+     * Shared by all nodes; snapshots with another secret are rejected. Without a secret no snapshots are accepted.
+     */
+    @Value("${ratelimiter.cluster.secret:}")
+    private String secret;
+
+    /**
+     * Time in milliseconds to connect to a node and to wait for its answer. Should be well below the sync interval.
+     */
+    @Value("${ratelimiter.cluster.timeout:500}")
+    private int timeout;
+
+    @Autowired
+    private HttpClientService httpClientService;
+
+    private List<Peer> peerList = new ArrayList<>();
+
+    private RequestConfig requestConfig;
+
+    private ExecutorService executor;
+
+    private volatile Receiver receiver;
+
+    @Override
+    public void start(Receiver receiver) {
+        List<Peer> list = new ArrayList<>();
+        for (String peer : peers.split(",")) {
+            peer = peer.trim();
+            if (!peer.isEmpty()) {
+                list.add(new Peer((peer.endsWith("/") ? peer.substring(0, peer.length() - 1) : peer) + RateLimiterClusterController.PATH));
+            }
+        }
+        peerList = list;
+        requestConfig = RequestConfig.copy(httpClientService.getRequestConfig())
+                .setConnectTimeout(timeout)
+                .setConnectionRequestTimeout(timeout)
+                .setSocketTimeout(timeout)
+                .build();
+        // one thread per node, as each node has at most one snapshot in flight
+        executor = Executors.newFixedThreadPool(Math.max(1, peerList.size()));
+        this.receiver = receiver;
+        logger.info("Sharing rate limiter counters with " + peerList.size() + " nodes");
+    }
+
+    @Override
+    public void send(CounterSnapshot snapshot) {
+        String body;
+        try {
+            body = SNAPSHOT_WRITER.writeValueAsString(snapshot);
+        } catch (JsonProcessingException e) {
+            logger.error("Could not serialize rate limiter counters", e);
+            return;
+        }
+        for (final Peer peer : peerList) {
+            if (!peer.sending.compareAndSet(false, true)) {
+                logger.debug("Node " + peer.url + " did not answer the previous rate limiter counters yet");
+                continue;
+            }
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            post(peer.url, body);
+                        } finally {
+                            peer.sending.set(false);
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // stopped meanwhile
+                peer.sending.set(false);
+            }
+        }
+    }
+
+    private void post(String url, String body) {
+        HttpPost post = new HttpPost(url);
+        post.setConfig(requestConfig);
+        post.setHeader(SECRET_HEADER, secret);
+        post.setEntity(new StringEntity(body, ContentType.APPLICATION_JSON));
+        try (CloseableHttpResponse response = httpClientService.getHttpClient().execute(post)) {
+            int status = response.getStatusLine().getStatusCode();
+            EntityUtils.consume(response.getEntity());
+            if (status >= 300) {
+                logger.warn("Node " + url + " rejected rate limiter counters with status " + status);
+            }
+        } catch (IOException e) {
+            logger.debug("Could not send rate limiter counters to " + url + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Passes a snapshot received from another node on to the rate limiter.
+     *
+     * @return false if the secret does not match or the transport is not started
+     */
+    public boolean receive(String secret, CounterSnapshot snapshot) {
+        Receiver currentReceiver = receiver;
+        // compared in constant time, so the answer time does not tell how much of the secret was guessed right
+        if (currentReceiver == null || this.secret.isEmpty() || secret == null
+                || !MessageDigest.isEqual(this.secret.getBytes(StandardCharsets.UTF_8), secret.getBytes(StandardCharsets.UTF_8))) {
+            return false;
+        }
+        currentReceiver.receive(snapshot);
+        return true;
+    }
+
+    @Override
+    public void stop() {
+        receiver = null;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Another node and whether a snapshot to it is in flight.
+     */
+    private static class Peer {
+        private final String url;
+        private final AtomicBoolean sending = new AtomicBoolean();
+
+        private Peer(String url) {
+            this.url = url;
+        }
+    }
+}
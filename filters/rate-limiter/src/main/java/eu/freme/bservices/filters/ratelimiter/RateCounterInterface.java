@@ -1,5 +1,7 @@
 package eu.freme.bservices.filters.ratelimiter;
 
+import java.io.IOException;
+
 /**
  * Created by Jonathan Sauder (jonathan.sauder@student.hpi.de) on 18.11.15.
  */
@@ -7,4 +9,21 @@ public interface RateCounterInterface {
 
     void addToStoredRequests(String username, long timestamp, long size, String endpointURI, String userRole);
 
+    /**
+     * Loads the rate limits from a YAML file on the class path and resets all counters.
+     */
+    void refresh(String rateLimiterYaml) throws IOException;
+
+    /**
+     * Resets all counters.
+     */
+    void clear();
+
+    /**
+     * Drops the counters of users without requests in the time frame ending at the given time.
+     *
+     * @return number of dropped counters
+     */
+    int evictIdle(long timestamp);
+
 }
@@ -0,0 +1,211 @@
+package eu.freme.bservices.filters.ratelimiter;
+
+import org.springframework.beans.factory.config.YamlPropertiesFactoryBean;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * The rate limits of the YAML configuration, compiled into an immutable table. Limits are given per user name or
+ * role, either for a single endpoint or as default for all endpoints:
+ * <pre>
+ * time-frame: 600
+ * rate-limits:
+ *   ROLE_USER:
+ *     default:
+ *       - 1000     # requests per time frame
+ *       - 100000   # characters per time frame
+ *   someuser:
+ *     /e-translation/tilde:
+ *       - 10
+ *       - 1000
+ * </pre>
+ * Resolving the limit of a request takes a few hash lookups and does not build any strings.
+ */
+public class RateLimitRules {
+
+    private static final String PREFIX = "rate-limits.";
+    private static final String DEFAULT = "default";
+
+    private final long timeFrame;
+
+    private final Map<String, Subject> subjects;
+
+    private RateLimitRules(long timeFrame, Map<String, Subject> subjects) {
+        this.timeFrame = timeFrame;
+        this.subjects = subjects;
+    }
+
+    /**
+     * Loads and compiles a YAML configuration from the class path.
+     *
+     * @param rateLimiterYaml the name of the YAML file
+     * @return the rate limits
+     * @throws IOException if the file is not found or malformed
+     */
+    public static RateLimitRules load(String rateLimiterYaml) throws IOException {
+        YamlPropertiesFactoryBean yaml = new YamlPropertiesFactoryBean();
+        URL yamlfile = RateLimitRules.class.getClassLoader().getResource(rateLimiterYaml);
+        if (yamlfile == null) {
+            throw new IOException(rateLimiterYaml+ "not Found in Filesystem");
+        }
+        FileSystemResource fileSystemResource = new FileSystemResource(yamlfile.getFile());
+        yaml.setResources(fileSystemResource);
+        try {
+            return compile(yaml.getObject());
+        } catch (RuntimeException e) {
+            // a malformed configuration fails here, not when the first request is checked
+            throw new IOException(rateLimiterYaml + " is not a valid rate limiter configuration: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Compiles the rate limits of a YAML configuration.
+     *
+     * @param properties the configuration, flattened to properties as done by
+     *                   {@link org.springframework.beans.factory.config.YamlPropertiesFactoryBean}
+     * @return the rate limits
+     * @throws IllegalArgumentException if the configuration is malformed
+     */
+    public static RateLimitRules compile(Properties properties) {
+        Object timeFrame = properties.get("time-frame");
+        if (!(timeFrame instanceof Number)) {
+            throw new IllegalArgumentException("time-frame is missing or not a number");
+        }
+
+        Map<String, Subject> subjects = new HashMap<>();
+        // the values are numbers, so stringPropertyNames() would skip them
+        for (Object name : properties.keySet()) {
+            String key = name.toString();
+            if (!key.startsWith(PREFIX)) {
+                continue;
+            }
+            if (!key.endsWith("]")) {
+                throw new IllegalArgumentException("bad rate limit \"" + key + "\": expected a list of limits");
+            }
+            if (!key.endsWith("[0]")) {
+                continue;
+            }
+            String path = key.substring(PREFIX.length(), key.length() - "[0]".length());
+            String subjectName;
+            String endpoint;
+            // user names may contain dots (e.g. IP addresses), endpoints start with a slash
+            int separator = path.indexOf("./");
+            if (separator >= 0) {
+                subjectName = path.substring(0, separator);
+                endpoint = path.substring(separator + 1);
+            } else if (path.endsWith("." + DEFAULT)) {
+                subjectName = path.substring(0, path.length() - DEFAULT.length() - 1);
+                endpoint = null;
+            } else {
+                throw new IllegalArgumentException("bad rate limit \"" + key + "\": expected an endpoint or \"default\"");
+            }
+
+            Rule rule = new Rule(PREFIX + path, number(properties, key), number(properties, PREFIX + path + "[1]"));
+            Subject subject = subjects.get(subjectName);
+            if (subject == null) {
+                subject = new Subject();
+                subjects.put(subjectName, subject);
+            }
+            if (endpoint == null) {
+                subject.defaultRule = rule;
+            } else {
+                subject.endpoints.put(endpoint, rule);
+            }
+        }
+        return new RateLimitRules(((Number) timeFrame).longValue() * 1000, Collections.unmodifiableMap(subjects));
+    }
+
+    private static long number(Properties properties, String key) {
+        Object value = properties.get(key);
+        if (value == null) {
+            return 0;
+        }
+        if (!(value instanceof Number)) {
+            throw new IllegalArgumentException("bad rate limit \"" + key + "\": " + value + " is not a number");
+        }
+        return ((Number) value).longValue();
+    }
+
+    /**
+     * @return length of the time frame in milliseconds
+     */
+    public long getTimeFrame() {
+        return timeFrame;
+    }
+
+    /**
+     * Finds the limit of a request. The limits of the user name take precedence over those of the role, and limits
+     * for the endpoint take precedence over the default.
+     *
+     * @return the limit, or {@code null} if there is none
+     */
+    public Rule resolve(String identifier, String endpointURI, String userRole) {
+        Rule rule = resolve(subjects.get(identifier), endpointURI);
+        if (rule == null) {
+            rule = resolve(subjects.get(userRole), endpointURI);
+        }
+        return rule;
+    }
+
+    private static Rule resolve(Subject subject, String endpointURI) {
+        if (subject == null) {
+            return null;
+        }
+        Rule rule = subject.endpoints.get(endpointURI);
+        return rule != null ? rule : subject.defaultRule;
+    }
+
+    /**
+     * The limits of a user name or role.
+     */
+    private static class Subject {
+        private final Map<String, Rule> endpoints = new HashMap<>();
+        private Rule defaultRule;
+    }
+
+    /**
+     * A limit of the number and total size of requests in the time frame.
+     */
+    public static class Rule {
+        private final String name;
+        private final int maxRequests;
+        private final long maxSize;
+
+        Rule(String name, long maxRequests, long maxSize) {
+            this.name = name;
+            this.maxRequests = (int) Math.min(maxRequests, Integer.MAX_VALUE);
+            this.maxSize = maxSize;
+        }
+
+        /**
+         * @return the key of the limit in the configuration, e.g. {@code rate-limits.ROLE_USER.default}
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return number of requests allowed in the time frame, 0 for no limit
+         */
+        public int getMaxRequests() {
+            return maxRequests;
+        }
+
+        /**
+         * @return total size of the requests allowed in the time frame, 0 for no limit
+         */
+        public long getMaxSize() {
+            return maxSize;
+        }
+
+        public boolean isUnlimited() {
+            return maxRequests == 0 && maxSize == 0;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package eu.freme.bservices.filters.ratelimiter;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Receives the counters of the other nodes of a cluster, see {@link HttpClusterTransport}.
+ */
+@RestController
+public class RateLimiterClusterController {
+
+    public static final String PATH = "/ratelimiter/cluster";
+
+    @Autowired
+    HttpClusterTransport transport;
+
+    @RequestMapping(value = PATH, method = RequestMethod.POST)
+    public ResponseEntity<String> receive(@RequestHeader(value = HttpClusterTransport.SECRET_HEADER, required = false) String secret,
+                                          @RequestBody CounterSnapshot snapshot) {
+        if (!transport.receive(secret, snapshot)) {
+            return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+        }
+        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+}
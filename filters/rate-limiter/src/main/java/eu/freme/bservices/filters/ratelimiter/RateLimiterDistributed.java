@@ -0,0 +1,248 @@
+package eu.freme.bservices.filters.ratelimiter;
+
+import eu.freme.bservices.filters.ratelimiter.exception.TooManyRequestsException;
+import eu.freme.common.exception.InternalServerErrorException;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rate limiter for several nodes behind a load balancer, so that the limits hold for the whole cluster instead of
+ * each node.
+ * <p>
+ * Each node counts its own requests as {@link RateLimiterInMemory} does. Periodically it sends the window totals of
+ * its counters to the other nodes, which keep the latest snapshot of each node. A request is admitted if the local
+ * count plus the counts reported by the other nodes stay within the limit. The snapshot of a node holds window totals
+ * rather than timestamps, so the clocks of the nodes do not need to agree. Requests admitted by other nodes since
+ * their last snapshot are not known yet: the cluster may exceed a limit by what the other nodes admit within one sync
+ * interval.
+ * </p>
+ */
+@Component
+public class RateLimiterDistributed implements RateCounterInterface {
+
+    private static final Logger logger = Logger.getLogger(RateLimiterDistributed.class);
+
+    /**
+     * Snapshots of a node are dropped after this many sync intervals without a new one.
+     */
+    private static final int EXPIRY_INTERVALS = 3;
+
+    @Autowired
+    private HttpClusterTransport httpTransport;
+
+    /**
+     * Time in milliseconds between two snapshots sent to the other nodes.
+     */
+    @Value("${ratelimiter.cluster.sync-interval:1000}")
+    private long syncInterval;
+
+    private ClusterTransport transport;
+
+    private final String node = UUID.randomUUID().toString();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private volatile RateLimitRules rules;
+
+    private final CounterTable storedRequests = new CounterTable();
+
+    /**
+     * The latest snapshot of each other node and the time it arrived.
+     */
+    private final Map<String, ReceivedSnapshot> snapshots = new HashMap<>();
+
+    /**
+     * Sum of the counters of the other nodes, keyed by the name of the rate limit and the user. Replaced as a whole
+     * when a snapshot arrives.
+     */
+    private volatile Map<String, Map<String, long[]>> otherNodes = Collections.emptyMap();
+
+    private ScheduledExecutorService scheduler;
+
+    public RateLimiterDistributed() {
+    }
+
+    /**
+     * Creates a rate limiter outside of Spring, e.g. to run several nodes in one JVM.
+     */
+    public RateLimiterDistributed(ClusterTransport transport, long syncInterval) {
+        this.transport = transport;
+        this.syncInterval = syncInterval;
+    }
+
+    /**
+     * Starts exchanging counters with the other nodes.
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        if (transport == null) {
+            transport = httpTransport;
+        }
+        transport.start(new ClusterTransport.Receiver() {
+            @Override
+            public void receive(CounterSnapshot snapshot) {
+                RateLimiterDistributed.this.receive(snapshot);
+            }
+        });
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sync();
+                } catch (RuntimeException e) {
+                    logger.error("Could not share rate limiter counters", e);
+                }
+            }
+        }, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        scheduler = null;
+        transport.stop();
+    }
+
+    @Override
+    public void refresh(String rateLimiterYaml) throws IOException {
+        rules = RateLimitRules.load(rateLimiterYaml);
+        clear();
+    }
+
+    @Override
+    public void addToStoredRequests(String identifier, long timestamp, long size, String endpointURI, String userRole) throws TooManyRequestsException {
+        RateLimitRules currentRules = rules;
+        RateLimitRules.Rule rule = currentRules.resolve(identifier, endpointURI, userRole);
+        if (rule == null) {
+            throw new InternalServerErrorException("No identifier found for "+identifier+"with role"+ userRole + "for resource" + endpointURI);
+        }
+        if (rule.isUnlimited()) {
+            return;
+        }
+        SlidingWindowCounter counter = storedRequests.get(rule, identifier, currentRules.getTimeFrame());
+        Map<String, long[]> otherUsers = otherNodes.get(rule.getName());
+        long[] other = otherUsers != null ? otherUsers.get(identifier) : null;
+        if (other == null) {
+            counter.add(timestamp, size);
+        } else {
+            counter.add(timestamp, size, other[0], other[1]);
+        }
+    }
+
+    /**
+     * Resets the counters of this node. The counters of the other nodes are kept: they reset their own.
+     */
+    @Override
+    public void clear() {
+        storedRequests.clear();
+    }
+
+    /**
+     * Drops the idle counters of this node. The other nodes leave idle counters out of their snapshots.
+     */
+    @Override
+    public int evictIdle(long timestamp) {
+        return storedRequests.evictIdle(timestamp);
+    }
+
+    /**
+     * Sends the counters of this node to the other nodes and drops the snapshots of nodes that stopped sending.
+     */
+    void sync() {
+        long now = SlidingWindowCounter.currentTime();
+        transport.send(new CounterSnapshot(node, sequence.incrementAndGet(), storedRequests.totals(now)));
+
+        synchronized (snapshots) {
+            boolean expired = false;
+            for (Iterator<ReceivedSnapshot> it = snapshots.values().iterator(); it.hasNext(); ) {
+                if (now - it.next().receivedAt > EXPIRY_INTERVALS * syncInterval) {
+                    it.remove();
+                    expired = true;
+                }
+            }
+            if (expired) {
+                sumSnapshots();
+            }
+        }
+    }
+
+    /**
+     * Keeps the snapshot of another node, unless a later one of the same node already arrived.
+     */
+    void receive(CounterSnapshot snapshot) {
+        if (node.equals(snapshot.getNode())) {
+            return;
+        }
+        synchronized (snapshots) {
+            ReceivedSnapshot previous = snapshots.get(snapshot.getNode());
+            if (previous != null && previous.snapshot.getSequence() >= snapshot.getSequence()) {
+                return;
+            }
+            snapshots.put(snapshot.getNode(), new ReceivedSnapshot(snapshot, SlidingWindowCounter.currentTime()));
+            sumSnapshots();
+        }
+    }
+
+    private void sumSnapshots() {
+        Map<String, Map<String, long[]>> sums = new HashMap<>();
+        for (ReceivedSnapshot received : snapshots.values()) {
+            for (Map.Entry<String, Map<String, long[]>> rule : received.snapshot.getCounters().entrySet()) {
+                Map<String, long[]> users = sums.get(rule.getKey());
+                if (users == null) {
+                    users = new HashMap<>();
+                    sums.put(rule.getKey(), users);
+                }
+                for (Map.Entry<String, long[]> counter : rule.getValue().entrySet()) {
+                    if (counter.getValue() == null || counter.getValue().length < 2) {
+                        continue;
+                    }
+                    long[] sum = users.get(counter.getKey());
+                    if (sum == null) {
+                        sum = new long[2];
+                        users.put(counter.getKey(), sum);
+                    }
+                    sum[0] += counter.getValue()[0];
+                    sum[1] += counter.getValue()[1];
+                }
+            }
+        }
+        otherNodes = sums;
+    }
+
+    /**
+     * @return id of this node in the snapshots it sends
+     */
+    public String getNode() {
+        return node;
+    }
+
+    private static class ReceivedSnapshot {
+        private final CounterSnapshot snapshot;
+        private final long receivedAt;
+
+        private ReceivedSnapshot(CounterSnapshot snapshot, long receivedAt) {
+            this.snapshot = snapshot;
+            this.receivedAt = receivedAt;
+        }
+    }
+}
@@ -25,7 +25,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.GenericFilterBean;
@@ -38,7 +38,7 @@ import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.Date;
+import java.util.Iterator;
 
 /**
  * Filter that limits number of requets made by each user
@@ -49,12 +49,30 @@ import java.util.Date;
 @Component
 public class RateLimitingFilter extends GenericFilterBean {
 
+	private static final String ANONYMOUS_USER = "anonymousUser";
+
+	private static final String ANONYMOUS_ROLE = "ROLE_ANONYMOUS";
+
 	@Autowired
 	ExceptionHandlerService exceptionHandlerService;
 
 	@Autowired
 	RateLimiterInMemory rateLimiterInMemory;
 
+	@Autowired
+	RateLimiterDistributed rateLimiterDistributed;
+
+	/**
+	 * Share the counters with the other nodes of a cluster, see {@link RateLimiterDistributed}.
+	 */
+	@Value("${ratelimiter.cluster.enabled:false}")
+	boolean clusterEnabled;
+
+	/**
+	 * The rate limiter in use, local or shared with the other nodes.
+	 */
+	RateCounterInterface rateLimiter;
+
 	@Value("${ratelimiter.enabled:true}")
 	boolean rateLimiterEnabled;
 
@@ -65,8 +83,14 @@ public class RateLimitingFilter extends GenericFilterBean {
 
 	@PostConstruct
 	public void setup (){
+		if (clusterEnabled) {
+			rateLimiterDistributed.start();
+			rateLimiter = rateLimiterDistributed;
+		} else {
+			rateLimiter = rateLimiterInMemory;
+		}
 		try {
-			rateLimiterInMemory.refresh(rateLimiterYaml);
+			rateLimiter.refresh(rateLimiterYaml);
 		} catch (IOException e) {
 			logger.error("Caugh IOException: "+rateLimiterYaml+" for YAML Configuration of Ratelimiter was not found." +
 					"The Ratelimiting Filter was turned off.");
@@ -79,38 +103,38 @@ public class RateLimitingFilter extends GenericFilterBean {
 	public RateLimitingFilter(){
 	}
 
-	private String username;
-	private String userRole;
-
 	@Override
 	public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain) throws IOException, ServletException {
 
 
-		if (rateLimiterEnabled) {
+		// the servlet path leaves out the context path and is decoded, so the check cannot be evaded with "//" or "%2F"
+		if (rateLimiterEnabled && !RateLimiterClusterController.PATH.equals(((HttpServletRequest) req).getServletPath())) {
 
 			HttpServletRequest request = (HttpServletRequest) req;
 			Authentication auth = SecurityContextHolder.getContext().getAuthentication();
 
-			username=auth.getName();
-			if (username.equals("anonymousUser")) {
-				username=req.getRemoteAddr();
+			// the filter is shared by all requests, so the identity stays in local variables. Reading it from the
+			// Authentication takes a few field reads and is cheaper than a cache lookup, see RateLimiterBenchmark.
+			String username;
+			String userRole;
+			if (auth == null || ANONYMOUS_USER.equals(auth.getName())) {
+				username = req.getRemoteAddr();
+				userRole = auth != null ? firstAuthority(auth) : ANONYMOUS_ROLE;
 			} else {
-				User user  = ((User)auth.getPrincipal());
-				username=user.getName();
+				username = ((User) auth.getPrincipal()).getName();
+				userRole = firstAuthority(auth);
 			}
 
-			userRole= ((SimpleGrantedAuthority)auth.getAuthorities().toArray()[0]).getAuthority();
-
-			long size = req.getContentLength();
+			// -1 if the length is not known, e.g. for chunked requests
+			long size = Math.max(0, req.getContentLength());
 			if (size==0) {
-				try {
-					size = request.getHeader("input").length();
-				} catch (NullPointerException e){
-					//Then the size is truly 0
+				String input = request.getHeader("input");
+				if (input != null) {
+					size = input.length();
 				}
 			}
 			try {
-				rateLimiterInMemory.addToStoredRequests(username, new Date().getTime(), size , request.getRequestURI(),userRole);
+				rateLimiter.addToStoredRequests(username, SlidingWindowCounter.currentTime(), size , request.getRequestURI(),userRole);
 			} catch (TooManyRequestsException e) {
 				HttpServletResponse response = (HttpServletResponse) res;
 				exceptionHandlerService.writeExceptionToResponse(request, response, e);
@@ -122,14 +146,30 @@ public class RateLimitingFilter extends GenericFilterBean {
 
 	}
 
+	static String firstAuthority(Authentication auth) {
+		Iterator<? extends GrantedAuthority> authorities = auth.getAuthorities().iterator();
+		return authorities.hasNext() ? authorities.next().getAuthority() : null;
+	}
+
 	/**
 	 * Clears all in-Memory Timestamps & Sizes of user-made requests.
-	 * Can be configured via the application.properties file
-	 * Defaults to 1 hour (3 600 000 miliseconds)
 	 */
-	@Scheduled(fixedRateString = "${ratelimiter.clear.timer:3600000}")
 	public void clearRateLimiterInMemory(){
-		rateLimiterInMemory.clear();
+		rateLimiter.clear();
+	}
+
+	/**
+	 * Drops the counters of users without requests in the last time frame. Requests expire continuously from the
+	 * sliding windows, so this only frees memory and does not change any limit.
+	 * Can be configured via the application.properties file
+	 * Defaults to 1 minute (60 000 miliseconds)
+	 */
+	@Scheduled(fixedRateString = "${ratelimiter.eviction.timer:60000}")
+	public void evictIdleCounters(){
+		int evicted = rateLimiter.evictIdle(SlidingWindowCounter.currentTime());
+		if (evicted > 0) {
+			logger.debug("Dropped " + evicted + " idle rate limiter counters");
+		}
 	}
 
 	public boolean isRateLimiterEnabled() {
@@ -140,9 +180,7 @@ public class RateLimitingFilter extends GenericFilterBean {
 	}
 
 	public void refresh() throws IOException {
-		rateLimiterInMemory.refresh(rateLimiterYaml);
+		rateLimiter.refresh(rateLimiterYaml);
 	}
 	public void destroy() {}
-
-
 }
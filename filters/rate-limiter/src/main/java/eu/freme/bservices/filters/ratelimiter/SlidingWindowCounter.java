@@ -0,0 +1,174 @@
+package eu.freme.bservices.filters.ratelimiter;
+
+import eu.freme.bservices.filters.ratelimiter.exception.TooManyRequestsException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts the requests and the request sizes of one identifier over a sliding time window.
+ * <p>
+ * The window is split into {@link #BUCKETS} buckets of equal length, kept in a ring. Each bucket is a single
+ * {@code long} holding the number of the time slice it belongs to (upper {@value #EPOCH_BITS} bits) and its count
+ * (lower {@value #COUNT_BITS} bits), so that a bucket is reset and incremented with one compare-and-set. A check
+ * adds the request first and rolls it back if a limit is exceeded: concurrent requests may be rejected together,
+ * but never more than the allowed number is admitted. A check does not lock and does not allocate.
+ * </p>
+ */
+public class SlidingWindowCounter {
+
+    static final int BUCKETS = 16;
+
+    private static final int COUNT_BITS = 40;
+    private static final int EPOCH_BITS = 64 - COUNT_BITS;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+    private static final long EPOCH_MASK = (1L << EPOCH_BITS) - 1;
+
+    /**
+     * Origin of {@link #currentTime()}.
+     */
+    private static final long START_TIME = System.nanoTime();
+
+    private final long timeFrame;
+    private final long bucketLength;
+    private final int maxRequests;
+    private final long maxSize;
+
+    private final AtomicLongArray requests = new AtomicLongArray(BUCKETS);
+    private final AtomicLongArray sizes = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Time of the last request, to find counters whose window is empty.
+     */
+    private volatile long lastRequest;
+
+    /**
+     * @param timeFrame     length of the window in milliseconds
+     * @param maxRequests   number of requests allowed in the window, 0 for no limit
+     * @param maxSize       total size of the requests allowed in the window, 0 for no limit
+     */
+    public SlidingWindowCounter(long timeFrame, int maxRequests, long maxSize) {
+        this.timeFrame = timeFrame;
+        this.bucketLength = Math.max(1, timeFrame / BUCKETS);
+        this.maxRequests = maxRequests;
+        this.maxSize = maxSize;
+        // no bucket belongs to a valid time slice yet
+        for (int i = 0; i < BUCKETS; i++) {
+            requests.set(i, EPOCH_MASK << COUNT_BITS);
+            sizes.set(i, EPOCH_MASK << COUNT_BITS);
+        }
+    }
+
+    /**
+     * @return milliseconds since the class was loaded, from a clock that does not jump when the system time is set
+     */
+    public static long currentTime() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - START_TIME);
+    }
+
+    /**
+     * Counts a request, or rejects it if it exceeds a limit. Rejected requests are not counted.
+     *
+     * @param timestamp time of the request in milliseconds
+     * @param size      size of the request, a negative (unknown) size counts as 0
+     * @throws TooManyRequestsException if the request exceeds the number of requests or the total size allowed
+     */
+    public void add(long timestamp, long size) throws TooManyRequestsException {
+        add(timestamp, size, 0, 0);
+    }
+
+    /**
+     * Counts a request, or rejects it if it exceeds a limit together with requests counted elsewhere, e.g. by other
+     * nodes of a cluster. Rejected requests are not counted.
+     *
+     * @param timestamp     time of the request in milliseconds
+     * @param size          size of the request, a negative (unknown) size counts as 0
+     * @param otherRequests number of requests in the window counted elsewhere
+     * @param otherSize     total size of the requests in the window counted elsewhere
+     * @throws TooManyRequestsException if the request exceeds the number of requests or the total size allowed
+     */
+    public void add(long timestamp, long size, long otherRequests, long otherSize) throws TooManyRequestsException {
+        lastRequest = timestamp;
+        // a negative delta would be taken for a rollback, or wrap around the count of the bucket
+        size = Math.max(0, size);
+        long epoch = (timestamp / bucketLength) & EPOCH_MASK;
+        int bucket = (int) (epoch % BUCKETS);
+
+        if (maxRequests > 0) {
+            increment(requests, bucket, epoch, 1);
+            long count = sum(requests, epoch) + otherRequests;
+            if (count > maxRequests) {
+                increment(requests, bucket, epoch, -1);
+                throw new TooManyRequestsException("You exceeded the allowed " + maxRequests + " requests in " + timeFrame / 1000 + " seconds. Please try again later.");
+            }
+        }
+        if (maxSize > 0) {
+            increment(sizes, bucket, epoch, size);
+            long totalSize = sum(sizes, epoch) + otherSize;
+            if (totalSize > maxSize) {
+                increment(sizes, bucket, epoch, -size);
+                if (maxRequests > 0) {
+                    increment(requests, bucket, epoch, -1);
+                }
+                throw new TooManyRequestsException("Your requests totalling " + totalSize + " characters exceeded the allowed " + maxSize + " characters of text. Please wait until making more requests.");
+            }
+        }
+    }
+
+    /**
+     * @return number of requests counted in the window ending at the given time
+     */
+    public long getRequests(long timestamp) {
+        return sum(requests, (timestamp / bucketLength) & EPOCH_MASK);
+    }
+
+    /**
+     * @return total size of the requests counted in the window ending at the given time
+     */
+    public long getSize(long timestamp) {
+        return sum(sizes, (timestamp / bucketLength) & EPOCH_MASK);
+    }
+
+    /**
+     * @return true if no request was counted in the window ending at the given time, so the counter can be dropped
+     */
+    public boolean isIdle(long timestamp) {
+        return timestamp - lastRequest > timeFrame;
+    }
+
+    /**
+     * Adds a delta to a bucket, resetting the bucket first if it belongs to an older time slice. A negative delta
+     * (a rollback) is dropped if the bucket moved on to another time slice meanwhile.
+     */
+    private static void increment(AtomicLongArray buckets, int bucket, long epoch, long delta) {
+        while (true) {
+            long value = buckets.get(bucket);
+            long count;
+            if ((value >>> COUNT_BITS) == epoch) {
+                count = (value & COUNT_MASK) + delta;
+            } else if (delta < 0) {
+                return;
+            } else {
+                count = delta;
+            }
+            if (buckets.compareAndSet(bucket, value, (epoch << COUNT_BITS) | (count & COUNT_MASK))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Sums the buckets of the {@link #BUCKETS} time slices up to the given one.
+     */
+    private static long sum(AtomicLongArray buckets, long epoch) {
+        long sum = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            long value = buckets.get(i);
+            long age = (epoch - (value >>> COUNT_BITS)) & EPOCH_MASK;
+            if (age < BUCKETS) {
+                sum += value & COUNT_MASK;
+            }
+        }
+        return sum;
+    }
+}
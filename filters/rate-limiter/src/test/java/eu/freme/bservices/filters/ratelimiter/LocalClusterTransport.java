@@ -0,0 +1,52 @@
+package eu.freme.bservices.filters.ratelimiter;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Delivers snapshots between several {@link RateLimiterDistributed} instances in the same JVM. Create one transport
+ * per node with {@link #join()}.
+ */
+public class LocalClusterTransport implements ClusterTransport {
+
+    private final List<LocalClusterTransport> nodes;
+
+    private volatile Receiver receiver;
+
+    public LocalClusterTransport() {
+        this.nodes = new CopyOnWriteArrayList<>();
+        nodes.add(this);
+    }
+
+    private LocalClusterTransport(List<LocalClusterTransport> nodes) {
+        this.nodes = nodes;
+        nodes.add(this);
+    }
+
+    /**
+     * @return the transport of a new node of the same cluster
+     */
+    public LocalClusterTransport join() {
+        return new LocalClusterTransport(nodes);
+    }
+
+    @Override
+    public void start(Receiver receiver) {
+        this.receiver = receiver;
+    }
+
+    @Override
+    public void send(CounterSnapshot snapshot) {
+        for (LocalClusterTransport node : nodes) {
+            Receiver nodeReceiver = node.receiver;
+            if (node != this && nodeReceiver != null) {
+                nodeReceiver.receive(snapshot);
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+        receiver = null;
+    }
+}
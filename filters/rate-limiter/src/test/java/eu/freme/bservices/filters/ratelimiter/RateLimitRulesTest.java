@@ -0,0 +1,124 @@
+package eu.freme.bservices.filters.ratelimiter;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class RateLimitRulesTest {
+
+    /**
+     * Builds the properties of a configuration as YamlPropertiesFactoryBean flattens them, from pairs of keys below
+     * {@code rate-limits.} and values.
+     */
+    private static Properties config(Object... limits) {
+        Properties properties = new Properties();
+        properties.put("time-frame", 600);
+        for (int i = 0; i < limits.length; i += 2) {
+            properties.put("rate-limits." + limits[i], limits[i + 1]);
+        }
+        return properties;
+    }
+
+    @Test
+    public void testUserBeforeRole() {
+        RateLimitRules rules = RateLimitRules.compile(config(
+                "ROLE_USER.default[0]", 100, "ROLE_USER.default[1]", 1000,
+                "someuser.default[0]", 10, "someuser.default[1]", 50));
+        assertEquals(600000, rules.getTimeFrame());
+
+        RateLimitRules.Rule rule = rules.resolve("someuser", "/e-entity/freme-ner/documents", "ROLE_USER");
+        assertEquals("rate-limits.someuser.default", rule.getName());
+        assertEquals(10, rule.getMaxRequests());
+        assertEquals(50, rule.getMaxSize());
+
+        rule = rules.resolve("otheruser", "/e-entity/freme-ner/documents", "ROLE_USER");
+        assertEquals("rate-limits.ROLE_USER.default", rule.getName());
+        assertEquals(100, rule.getMaxRequests());
+
+        assertNull(rules.resolve("otheruser", "/e-entity/freme-ner/documents", "ROLE_ADMIN"));
+    }
+
+    @Test
+    public void testEndpointBeforeDefault() {
+        RateLimitRules rules = RateLimitRules.compile(config(
+                "ROLE_USER.default[0]", 100, "ROLE_USER.default[1]", 1000,
+                "ROLE_USER./e-translation/tilde[0]", 5, "ROLE_USER./e-translation/tilde[1]", 500));
+
+        RateLimitRules.Rule rule = rules.resolve("someuser", "/e-translation/tilde", "ROLE_USER");
+        assertEquals("rate-limits.ROLE_USER./e-translation/tilde", rule.getName());
+        assertEquals(5, rule.getMaxRequests());
+        assertEquals(500, rule.getMaxSize());
+
+        rule = rules.resolve("someuser", "/e-entity/freme-ner/documents", "ROLE_USER");
+        assertEquals("rate-limits.ROLE_USER.default", rule.getName());
+    }
+
+    @Test
+    public void testUserNameWithDots() {
+        RateLimitRules rules = RateLimitRules.compile(config(
+                "192.168.0.1.default[0]", 10, "192.168.0.1.default[1]", 100,
+                "192.168.0.1./e-translation/tilde[0]", 1, "192.168.0.1./e-translation/tilde[1]", 10));
+
+        RateLimitRules.Rule rule = rules.resolve("192.168.0.1", "/e-entity/freme-ner/documents", "ROLE_ANONYMOUS");
+        assertEquals("rate-limits.192.168.0.1.default", rule.getName());
+        assertEquals(10, rule.getMaxRequests());
+
+        rule = rules.resolve("192.168.0.1", "/e-translation/tilde", "ROLE_ANONYMOUS");
+        assertEquals("rate-limits.192.168.0.1./e-translation/tilde", rule.getName());
+        assertEquals(1, rule.getMaxRequests());
+    }
+
+    @Test
+    public void testMissingSize() {
+        RateLimitRules rules = RateLimitRules.compile(config("ROLE_USER.default[0]", 100));
+
+        RateLimitRules.Rule rule = rules.resolve("someuser", "/e-translation/tilde", "ROLE_USER");
+        assertEquals(100, rule.getMaxRequests());
+        assertEquals(0, rule.getMaxSize());
+    }
+
+    @Test
+    public void testMalformed() {
+        Properties missingTimeFrame = config("ROLE_USER.default[0]", 100);
+        missingTimeFrame.remove("time-frame");
+        assertMalformed(missingTimeFrame);
+        assertMalformed(config("ROLE_USER.default[0]", "many"));
+        assertMalformed(config("ROLE_USER.default", 100));
+        assertMalformed(config("ROLE_USER.tilde[0]", 100));
+    }
+
+    private static void assertMalformed(Properties properties) {
+        try {
+            RateLimitRules.compile(properties);
+            fail("the configuration " + properties + " should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testLoad() throws IOException {
+        RateLimitRules rules = RateLimitRules.load("ratelimiter.yaml");
+        RateLimitRules.Rule rule = rules.resolve("ratelimitertestuser", "/mockups/file/ratelimiting_requests", "ROLE_USER");
+        assertEquals(1, rule.getMaxRequests());
+        assertEquals(1000, rule.getMaxSize());
+
+        try {
+            RateLimitRules.load("ratelimiter-malformed.yaml");
+            fail("the malformed configuration should be rejected when it is loaded");
+        } catch (IOException e) {
+            // expected
+        }
+        try {
+            RateLimitRules.load("ratelimiter-missing.yaml");
+            fail("a missing configuration should be rejected when it is loaded");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
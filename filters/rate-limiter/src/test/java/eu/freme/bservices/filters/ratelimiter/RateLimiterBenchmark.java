@@ -0,0 +1,68 @@
+package eu.freme.bservices.filters.ratelimiter;
+
+import eu.freme.common.persistence.model.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time {@link RateLimitingFilter} adds to a request of an authenticated user: reading the identity from
+ * the {@link Authentication}, resolving the limit and counting the request, with many threads counting requests of
+ * the same user. The goal is well under a microsecond per request. This is not a unit test; run it with the main
+ * method after compiling the test classes.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Threads(8)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RateLimiterBenchmark {
+
+    private static final String ENDPOINT = "/e-entity/freme-ner/documents";
+
+    private RateLimiterInMemory rateLimiter;
+
+    private Authentication auth;
+
+    @Setup
+    public void setup() throws IOException {
+        rateLimiter = new RateLimiterInMemory();
+        rateLimiter.refresh("ratelimiter-benchmark.yaml");
+        User user = new User("benchmarkuser", "password", User.roleUser);
+        auth = new UsernamePasswordAuthenticationToken(user, user.getPassword(),
+                Collections.singletonList(new SimpleGrantedAuthority(User.roleUser)));
+    }
+
+    @Benchmark
+    public void authenticatedRequest() {
+        String username = ((User) auth.getPrincipal()).getName();
+        String userRole = RateLimitingFilter.firstAuthority(auth);
+        rateLimiter.addToStoredRequests(username, SlidingWindowCounter.currentTime(), 100, ENDPOINT, userRole);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RateLimiterBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
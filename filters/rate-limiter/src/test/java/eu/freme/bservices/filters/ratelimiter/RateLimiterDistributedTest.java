@@ -0,0 +1,117 @@
+package eu.freme.bservices.filters.ratelimiter;
+
+import eu.freme.bservices.filters.ratelimiter.exception.TooManyRequestsException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs several nodes of a cluster in one JVM, with the limits of ratelimiter.yaml.
+ */
+public class RateLimiterDistributedTest {
+
+    private static final String USER = "ratelimitertestuser";
+    private static final String ROLE = "ROLE_USER";
+    private static final String LIMITED = "/mockups/file/ratelimiting_requests";
+    private static final String SIZE_LIMITED = "/mockups/file/ratelimiting_size";
+
+    private List<RateLimiterDistributed> nodes = new ArrayList<>();
+
+    @Before
+    public void setup() throws IOException {
+        LocalClusterTransport transport = new LocalClusterTransport();
+        for (int i = 0; i < 3; i++) {
+            // the nodes sync only when the test says so
+            RateLimiterDistributed node = new RateLimiterDistributed(i == 0 ? transport : transport.join(), 3600000);
+            node.refresh("ratelimiter.yaml");
+            node.start();
+            nodes.add(node);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        for (RateLimiterDistributed node : nodes) {
+            node.stop();
+        }
+    }
+
+    @Test
+    public void testSharedLimit() {
+        long now = SlidingWindowCounter.currentTime();
+        nodes.get(0).addToStoredRequests(USER, now, 0, LIMITED, ROLE);
+        // the other nodes do not know about the request yet
+        nodes.get(1).addToStoredRequests(USER, now, 0, LIMITED, ROLE);
+        nodes.get(0).sync();
+        nodes.get(1).sync();
+
+        for (RateLimiterDistributed node : nodes) {
+            try {
+                node.addToStoredRequests(USER, now, 0, LIMITED, ROLE);
+                fail("the limit of the cluster is reached");
+            } catch (TooManyRequestsException e) {
+                // expected
+            }
+        }
+        // unlimited endpoints are not affected
+        nodes.get(2).addToStoredRequests(USER, now, 100, "/mockups/file/ratelimiting_default", ROLE);
+    }
+
+    @Test
+    public void testSharedSize() {
+        long now = SlidingWindowCounter.currentTime();
+        try {
+            nodes.get(0).addToStoredRequests(USER, now, 2, SIZE_LIMITED, ROLE);
+            fail("the request exceeds the size");
+        } catch (TooManyRequestsException e) {
+            // expected
+        }
+        nodes.get(0).addToStoredRequests(USER, now, 1, SIZE_LIMITED, ROLE);
+        nodes.get(0).sync();
+        try {
+            nodes.get(2).addToStoredRequests(USER, now, 1, SIZE_LIMITED, ROLE);
+            fail("the size of the cluster is reached");
+        } catch (TooManyRequestsException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSnapshotReplaced() {
+        long now = SlidingWindowCounter.currentTime();
+        nodes.get(0).addToStoredRequests(USER, now, 0, LIMITED, ROLE);
+        nodes.get(0).sync();
+        // node 0 forgets its counters, its next snapshot frees the quota on the other nodes
+        nodes.get(0).clear();
+        nodes.get(0).sync();
+
+        // the first snapshot of node 0 arrives late and is ignored
+        Map<String, long[]> users = new HashMap<>();
+        users.put(USER, new long[]{1, 0});
+        Map<String, Map<String, long[]>> counters = new HashMap<>();
+        counters.put("rate-limits." + USER + "." + LIMITED, users);
+        nodes.get(1).receive(new CounterSnapshot(nodes.get(0).getNode(), 1, counters));
+
+        nodes.get(1).addToStoredRequests(USER, now, 0, LIMITED, ROLE);
+    }
+
+    @Test
+    public void testEvictIdle() {
+        long now = SlidingWindowCounter.currentTime();
+        nodes.get(0).addToStoredRequests(USER, now, 0, LIMITED, ROLE);
+        assertEquals(0, nodes.get(0).evictIdle(now));
+        // the time frame of ratelimiter.yaml is 600 seconds
+        long later = now + 600001;
+        assertEquals(1, nodes.get(0).evictIdle(later));
+        nodes.get(0).addToStoredRequests(USER, later, 0, LIMITED, ROLE);
+    }
+}
@@ -0,0 +1,43 @@
+package eu.freme.bservices.filters.ratelimiter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the throughput of {@link SlidingWindowCounter#add(long, long)} when many threads count requests of the
+ * same identifier. This is not a unit test; run it with the main method after compiling the test classes.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Threads(8)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class SlidingWindowCounterBenchmark {
+
+    private SlidingWindowCounter counter;
+
+    @Setup
+    public void setup() {
+        counter = new SlidingWindowCounter(600000, Integer.MAX_VALUE, Long.MAX_VALUE >>> 24);
+    }
+
+    @Benchmark
+    public void sameIdentifier() {
+        counter.add(System.currentTimeMillis(), 100);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(SlidingWindowCounterBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,108 @@
+package eu.freme.bservices.filters.ratelimiter;
+
+import eu.freme.bservices.filters.ratelimiter.exception.TooManyRequestsException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SlidingWindowCounterTest {
+
+    @Test
+    public void testRequests() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(10000, 3, 0);
+        for (int i = 0; i < 3; i++) {
+            counter.add(1000 + i, 1);
+        }
+        try {
+            counter.add(1003, 1);
+            fail("the fourth request should be rejected");
+        } catch (TooManyRequestsException e) {
+            // expected
+        }
+        assertEquals(3, counter.getRequests(1003));
+        // the window has moved past the first requests
+        counter.add(11000 + SlidingWindowCounter.BUCKETS * 1000, 1);
+        assertEquals(1, counter.getRequests(11000 + SlidingWindowCounter.BUCKETS * 1000));
+    }
+
+    @Test
+    public void testSize() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(10000, 0, 100);
+        counter.add(1000, 60);
+        try {
+            counter.add(1001, 50);
+            fail("the request should exceed the size");
+        } catch (TooManyRequestsException e) {
+            // expected
+        }
+        counter.add(1002, 40);
+        assertEquals(100, counter.getSize(1002));
+    }
+
+    @Test
+    public void testUnknownSize() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(10000, 0, 100);
+        counter.add(1000, 60);
+        counter.add(1001, -1);
+        assertEquals(60, counter.getSize(1001));
+        counter.add(1002, 40);
+        try {
+            counter.add(1003, 1);
+            fail("the request should exceed the size");
+        } catch (TooManyRequestsException e) {
+            // expected
+        }
+        assertEquals(100, counter.getSize(1003));
+    }
+
+    @Test
+    public void testIdle() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(10000, 3, 0);
+        counter.add(1000, 1);
+        assertFalse(counter.isIdle(11000));
+        assertTrue(counter.isIdle(11001));
+        assertEquals(0, counter.getRequests(11001));
+    }
+
+    @Test
+    public void testConcurrentRequests() throws Exception {
+        final SlidingWindowCounter counter = new SlidingWindowCounter(600000, 5000, 0);
+        final long timestamp = 1000000;
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int thread = 0; thread < 8; thread++) {
+            results.add(executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    int admitted = 0;
+                    for (int i = 0; i < 10000; i++) {
+                        try {
+                            counter.add(timestamp, 1);
+                            admitted++;
+                        } catch (TooManyRequestsException e) {
+                            // over the limit
+                        }
+                    }
+                    return admitted;
+                }
+            }));
+        }
+        int admitted = 0;
+        for (Future<Integer> result : results) {
+            admitted += result.get();
+        }
+        executor.shutdown();
+        assertTrue(admitted <= 5000);
+        assertEquals(admitted, counter.getRequests(timestamp));
+    }
+}
@@ -0,0 +1,272 @@
+/**
+ * Copyright (C) 2015 Agro-Know, Deutsches Forschungszentrum für Künstliche Intelligenz, iMinds,
+ * Institut für Angewandte Informatik e. V. an der Universität Leipzig,
+ * Istituto Superiore Mario Boella, Tilde, Vistatec, WRIPL (http://freme-project.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.freme.bservices.httpclient;
+
+import com.mashape.unirest.http.Unirest;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Provides the HTTP client used for all outgoing requests to other services. The client keeps a pool of persistent
+ * connections with a limit per host, evicts idle connections and applies connect and read timeouts. It is installed
+ * as the client of {@link Unirest}, so all requests sent through Unirest use the same pool.
+ * <p>Per-host limits are configured as a comma separated list, e.g.
+ * {@code http-client.route-limits=localhost:8080=50,https://api.example.org=10}.</p>
+ */
+@Component
+public class HttpClientService {
+
+	private Logger logger = Logger.getLogger(HttpClientService.class);
+
+	/**
+	 * Attribute of the {@link HttpContext} of a request that holds the time in nanoseconds spent opening a new
+	 * connection. Not set if a pooled connection was used.
+	 */
+	public static final String CONNECT_TIME = "eu.freme.bservices.httpclient.connect-time";
+
+	/**
+	 * Maximum number of connections, over all hosts.
+	 */
+	@Value("${http-client.max-total:200}")
+	private int maxTotal;
+
+	/**
+	 * Maximum number of connections to a single host, if no limit is configured for the host.
+	 */
+	@Value("${http-client.max-per-route:20}")
+	private int maxPerRoute;
+
+	@Value("${http-client.route-limits:}")
+	private String routeLimits;
+
+	@Value("${http-client.connect-timeout:10000}")
+	private int connectTimeout;
+
+	@Value("${http-client.read-timeout:60000}")
+	private int readTimeout;
+
+	/**
+	 * Maximum number of milliseconds to wait for a connection from the pool.
+	 */
+	@Value("${http-client.connection-request-timeout:30000}")
+	private int connectionRequestTimeout;
+
+	/**
+	 * Maximum number of milliseconds a connection is kept alive, also if the server allows longer.
+	 */
+	@Value("${http-client.keep-alive:30000}")
+	private long keepAlive;
+
+	/**
+	 * Number of milliseconds after which idle connections are closed.
+	 */
+	@Value("${http-client.idle-timeout:30000}")
+	private long idleTimeout;
+
+	private MeasuringConnectionManager connectionManager;
+
+	private CloseableHttpClient httpClient;
+
+	private RequestConfig requestConfig;
+
+	private final AtomicLong leaseCount = new AtomicLong();
+
+	private final AtomicLong leaseWaitTime = new AtomicLong();
+
+	@PostConstruct
+	public void init() {
+		connectionManager = new MeasuringConnectionManager();
+		connectionManager.setMaxTotal(maxTotal);
+		connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+		for (String routeLimit : routeLimits.split(",")) {
+			routeLimit = routeLimit.trim();
+			if (routeLimit.isEmpty()) {
+				continue;
+			}
+			int separator = routeLimit.lastIndexOf('=');
+			if (separator < 0) {
+				throw new IllegalArgumentException("bad parameter http-client.route-limits: \"" + routeLimit + "\"");
+			}
+			HttpRoute route = createRoute(routeLimit.substring(0, separator).trim());
+			connectionManager.setMaxPerRoute(route, Integer.parseInt(routeLimit.substring(separator + 1).trim()));
+		}
+
+		requestConfig = RequestConfig.custom()
+				.setConnectTimeout(connectTimeout)
+				.setSocketTimeout(readTimeout)
+				.setConnectionRequestTimeout(connectionRequestTimeout)
+				.build();
+
+		httpClient = HttpClients.custom()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(requestConfig)
+				.setKeepAliveStrategy(new LimitedKeepAliveStrategy())
+				.evictExpiredConnections()
+				.evictIdleConnections(idleTimeout, TimeUnit.MILLISECONDS)
+				.build();
+		Unirest.setHttpClient(httpClient);
+		logger.info("HTTP client pool: " + maxTotal + " connections, " + maxPerRoute + " per host");
+	}
+
+	@PreDestroy
+	public void destroy() {
+		try {
+			httpClient.close();
+		} catch (IOException e) {
+			logger.warn("Could not close the HTTP client", e);
+		}
+	}
+
+	public CloseableHttpClient getHttpClient() {
+		return httpClient;
+	}
+
+	/**
+	 * @return the default timeouts of requests; use {@link RequestConfig#copy(RequestConfig)} to change them for a
+	 * single request
+	 */
+	public RequestConfig getRequestConfig() {
+		return requestConfig;
+	}
+
+	/**
+	 * @return number of connections currently in use
+	 */
+	public int getLeased() {
+		return connectionManager.getTotalStats().getLeased();
+	}
+
+	/**
+	 * @return number of requests waiting for a connection
+	 */
+	public int getPending() {
+		return connectionManager.getTotalStats().getPending();
+	}
+
+	/**
+	 * @return number of idle connections in the pool
+	 */
+	public int getAvailable() {
+		return connectionManager.getTotalStats().getAvailable();
+	}
+
+	/**
+	 * @return pool statistics of a single host
+	 */
+	public PoolStats getStats(String host) {
+		return connectionManager.getStats(createRoute(host));
+	}
+
+	/**
+	 * @return number of connections leased from the pool so far
+	 */
+	public long getLeaseCount() {
+		return leaseCount.get();
+	}
+
+	/**
+	 * @return total time in milliseconds spent waiting for connections from the pool
+	 */
+	public long getLeaseWaitTime() {
+		return TimeUnit.NANOSECONDS.toMillis(leaseWaitTime.get());
+	}
+
+	/**
+	 * Creates the route to a host given as {@code [scheme://]host[:port]}.
+	 */
+	private static HttpRoute createRoute(String host) {
+		HttpHost target = HttpHost.create(host);
+		boolean secure = "https".equalsIgnoreCase(target.getSchemeName());
+		if (target.getPort() < 0) {
+			target = new HttpHost(target.getHostName(), secure ? 443 : 80, target.getSchemeName());
+		}
+		return new HttpRoute(target, null, secure);
+	}
+
+	/**
+	 * Keeps connections alive as long as the server allows, but not longer than configured.
+	 */
+	private class LimitedKeepAliveStrategy implements ConnectionKeepAliveStrategy {
+		@Override
+		public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+			long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+			return duration > 0 ? Math.min(duration, keepAlive) : keepAlive;
+		}
+	}
+
+	/**
+	 * Connection manager that measures the time spent waiting for a connection and the time spent connecting.
+	 */
+	private class MeasuringConnectionManager extends PoolingHttpClientConnectionManager {
+		@Override
+		public void connect(HttpClientConnection managedConn, HttpRoute route, int connectTimeout, HttpContext context)
+				throws IOException {
+			long start = System.nanoTime();
+			try {
+				super.connect(managedConn, route, connectTimeout, context);
+			} finally {
+				context.setAttribute(CONNECT_TIME, System.nanoTime() - start);
+			}
+		}
+
+		@Override
+		public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+			final ConnectionRequest request = super.requestConnection(route, state);
+			return new ConnectionRequest() {
+				@Override
+				public HttpClientConnection get(long timeout, TimeUnit tunit)
+						throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+					long start = System.nanoTime();
+					try {
+						return request.get(timeout, tunit);
+					} finally {
+						leaseCount.incrementAndGet();
+						leaseWaitTime.addAndGet(System.nanoTime() - start);
+					}
+				}
+
+				@Override
+				public boolean cancel() {
+					return request.cancel();
+				}
+			};
+		}
+	}
+}
@@ -17,13 +17,19 @@
  */
 package eu.freme.bservices.internationalization.api;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.util.HashSet;
 
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
 import eu.freme.bservices.internationalization.okapi.nif.converter.ConversionException;
+import eu.freme.bservices.internationalization.okapi.nif.converter.NifConversionResult;
 import eu.freme.bservices.internationalization.okapi.nif.converter.NifConverter;
 //import net.sf.okapi.common.MimeTypeMapper;
 import eu.freme.bservices.internationalization.okapi.nif.converter.HTMLBackConverter;
@@ -39,6 +45,9 @@ public class InternationalizationAPI {
 	@Autowired
 	SerializationFormatMapper serializationFormatMapper;
 
+	@Autowired
+	NifConversionCache cache;
+
 	private HashSet<String> supportedMimeTypes;
 
 	public static final String MIME_TYPE_XLIFF_1_2 = net.sf.okapi.common.MimeTypeMapper.XLIFF_MIME_TYPE;
@@ -51,6 +60,14 @@ public class InternationalizationAPI {
 
 	private static final String FREME_NIF_URI_PREFIX = "http://freme-project.eu/";
 
+	private static final String CACHE_KIND_NIF = "nif";
+
+	private static final String CACHE_KIND_SKELETON = "skeleton";
+
+	private static final String CACHE_KIND_NIF_AND_SKELETON = "nif+skeleton";
+
+	private static final String TURTLE = "TTL";
+
 	private NifConverter converter;
 
 	private HTMLBackConverter backConverter;
@@ -84,7 +101,14 @@ public class InternationalizationAPI {
 			throws ConversionException {
 
 		Reader reader = null;
-		InputStream turtleStream = converter.convert2Nif(is, mimeType, FREME_NIF_URI_PREFIX);
+		InputStream turtleStream;
+		if (cache.isEnabled()) {
+			byte[] content = read(is);
+			turtleStream = convertCached(CACHE_KIND_NIF, content, mimeType);
+		} else {
+			turtleStream = converter.convert2Nif(is, mimeType,
+					FREME_NIF_URI_PREFIX);
+		}
 		try {
 			reader = new InputStreamReader(turtleStream, "UTF-8");
 			
@@ -97,7 +121,15 @@ public class InternationalizationAPI {
 	public Reader convertToTurtleWithMarkups(InputStream is, String mimeType) throws ConversionException{
 		
 		Reader reader = null;
-		InputStream turtleStream = converter.convert2NifWithMarkers(is, mimeType, FREME_NIF_URI_PREFIX);
+		InputStream turtleStream;
+		if (cache.isEnabled()) {
+			byte[] content = read(is);
+			turtleStream = convertCached(CACHE_KIND_SKELETON, content,
+					mimeType);
+		} else {
+			turtleStream = converter.convert2NifWithMarkers(is, mimeType,
+					FREME_NIF_URI_PREFIX);
+		}
 		try {
 			reader = new InputStreamReader(turtleStream, "UTF-8");
 		} catch (UnsupportedEncodingException e) {
@@ -106,6 +138,105 @@ public class InternationalizationAPI {
 		return reader;
 	}
 	
+	/**
+	 * Converts a document to a NIF model, for callers running in the same
+	 * process that do not need the turtle serialization. When the cache is
+	 * enabled, the model shares the cached turtle conversion of
+	 * {@link #convertToTurtle}: a hit is parsed from it, and a miss is
+	 * serialized to it.
+	 */
+	public Model convertToModel(InputStream is, String mimeType)
+			throws ConversionException {
+		if (!cache.isEnabled()) {
+			return converter.convert2NifModel(is, mimeType,
+					FREME_NIF_URI_PREFIX);
+		}
+
+		byte[] content = read(is);
+		String key = cache.key(CACHE_KIND_NIF, content, mimeType,
+				FREME_NIF_URI_PREFIX);
+		InputStream cached = cache.get(key);
+		if (cached != null) {
+			return ModelFactory.createDefaultModel().read(cached, null, TURTLE);
+		}
+
+		Model model = converter.convert2NifModel(new ByteArrayInputStream(
+				content), mimeType, FREME_NIF_URI_PREFIX);
+		ByteArrayOutputStream turtle = new ByteArrayOutputStream();
+		model.write(turtle, TURTLE);
+		cache.put(key, turtle.toByteArray());
+		return model;
+	}
+
+	/**
+	 * Converts a document to turtle and to a turtle skeleton with markups, as
+	 * needed for roundtripping, parsing the document only once. The results are
+	 * UTF-8 encoded. Both are cached as a single entry, so they are always
+	 * found or evicted together.
+	 */
+	public NifConversionResult convertToTurtleWithSkeleton(InputStream is,
+			String mimeType) throws ConversionException {
+		if (!cache.isEnabled()) {
+			return converter.convert2NifWithSkeleton(is, mimeType,
+					FREME_NIF_URI_PREFIX);
+		}
+
+		byte[] content = read(is);
+		String key = cache.key(CACHE_KIND_NIF_AND_SKELETON, content, mimeType,
+				FREME_NIF_URI_PREFIX);
+		InputStream[] cached = cache.getParts(key);
+		if (cached != null) {
+			return new NifConversionResult(cached[0], cached[1]);
+		}
+
+		NifConversionResult result = converter.convert2NifWithSkeleton(
+				new ByteArrayInputStream(content), mimeType,
+				FREME_NIF_URI_PREFIX);
+		byte[] nifData = read(result.getNif());
+		byte[] skeletonData = read(result.getSkeleton());
+		cache.put(key, nifData, skeletonData);
+		return new NifConversionResult(new ByteArrayInputStream(nifData),
+				new ByteArrayInputStream(skeletonData));
+	}
+
+	/**
+	 * Looks up a conversion in the cache and converts the document only when
+	 * it is not cached yet.
+	 */
+	private InputStream convertCached(String kind, byte[] content,
+			String mimeType) throws ConversionException {
+		String key = cache.key(kind, content, mimeType, FREME_NIF_URI_PREFIX);
+		InputStream cached = cache.get(key);
+		if (cached != null) {
+			return cached;
+		}
+
+		InputStream is = new ByteArrayInputStream(content);
+		byte[] data;
+		if (CACHE_KIND_NIF.equals(kind)) {
+			data = read(converter.convert2Nif(is, mimeType,
+					FREME_NIF_URI_PREFIX));
+		} else {
+			data = read(converter.convert2NifWithMarkers(is, mimeType,
+					FREME_NIF_URI_PREFIX));
+		}
+		cache.put(key, data);
+		return new ByteArrayInputStream(data);
+	}
+
+	private byte[] read(InputStream is) throws ConversionException {
+		try {
+			return NifConversionCache.toByteArray(is);
+		} catch (IOException e) {
+			throw new ConversionException("Error while reading the document",
+					e);
+		}
+	}
+
+	public NifConversionCache getCache() {
+		return cache;
+	}
+
 	public Reader convertBack(InputStream markupsFile, InputStream enrichedFile){
 		
 		Reader reader = null;
@@ -0,0 +1,333 @@
+/**
+ * Copyright (C) 2015 Agro-Know, Deutsches Forschungszentrum für Künstliche Intelligenz, iMinds,
+ * Institut für Angewandte Informatik e. V. an der Universität Leipzig,
+ * Istituto Superiore Mario Boella, Tilde, Vistatec, WRIPL (http://freme-project.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.freme.bservices.internationalization.api;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bounded cache of NIF conversion results. Entries are addressed by a hash of
+ * the converted document together with the conversion kind, the mime type and
+ * the NIF URI prefix, so a document sent again is not converted again. An entry
+ * may hold several parts produced by the same conversion, e.g. a NIF document
+ * and its skeleton, which are then cached and evicted together. The least
+ * recently used entries are evicted when the total size of the cached
+ * conversions exceeds the configured number of bytes.
+ */
+@Component
+public class NifConversionCache {
+
+	private Logger logger = Logger.getLogger(NifConversionCache.class);
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	@Value("${freme.einternationalization.cache.enabled:false}")
+	boolean enabled;
+
+	/**
+	 * Maximum number of bytes held by the cached conversions.
+	 */
+	@Value("${freme.einternationalization.cache.max-size:67108864}")
+	long maxSize;
+
+	/**
+	 * Store the cached conversions in direct buffers outside of the Java heap.
+	 */
+	@Value("${freme.einternationalization.cache.off-heap:false}")
+	boolean offHeap;
+
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(
+			16, 0.75f, true);
+
+	private long size = 0;
+
+	private long hits = 0;
+
+	private long misses = 0;
+
+	private long evictions = 0;
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Computes the cache key of a conversion.
+	 * 
+	 * @param kind
+	 *            the kind of the conversion, e.g. NIF or NIF skeleton
+	 * @param content
+	 *            the document to be converted
+	 * @param mimeType
+	 *            the document mime type
+	 * @param uriPrefix
+	 *            the URI prefix used for resources in the NIF document
+	 * @return the key
+	 */
+	public String key(String kind, byte[] content, String mimeType,
+			String uriPrefix) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// SHA-256 is available on every Java platform
+			throw new IllegalStateException(e);
+		}
+		digest.update(content);
+		StringBuilder key = new StringBuilder(kind).append(':')
+				.append(mimeType).append(':').append(uriPrefix).append(':');
+		for (byte b : digest.digest()) {
+			key.append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Returns the cached conversion for a key.
+	 * 
+	 * @param key
+	 *            the key computed by {@link #key}
+	 * @return a stream reading the conversion, or null if it is not cached
+	 */
+	public InputStream get(String key) {
+		InputStream[] parts = getParts(key);
+		return parts != null ? parts[0] : null;
+	}
+
+	/**
+	 * Returns all parts of the cached conversion for a key.
+	 * 
+	 * @param key
+	 *            the key computed by {@link #key}
+	 * @return a stream reading each part of the conversion, in the order they
+	 *         were stored, or null if it is not cached
+	 */
+	public synchronized InputStream[] getParts(String key) {
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		InputStream[] parts = new InputStream[entry.parts()];
+		for (int i = 0; i < parts.length; i++) {
+			parts[i] = entry.getInputStream(i);
+		}
+		return parts;
+	}
+
+	/**
+	 * Adds a conversion to the cache and evicts the least recently used
+	 * conversions when the cache exceeds its maximum size. Conversions larger
+	 * than the whole cache are not stored.
+	 * 
+	 * @param key
+	 *            the key computed by {@link #key}
+	 * @param parts
+	 *            the conversion, in one or several parts
+	 */
+	public synchronized void put(String key, byte[]... parts) {
+		long length = 0;
+		for (byte[] part : parts) {
+			length += part.length;
+		}
+		if (length > maxSize) {
+			logger.debug("conversion of " + length
+					+ " bytes is too large to be cached");
+			return;
+		}
+		Entry entry = offHeap ? new DirectEntry(parts) : new HeapEntry(parts);
+		Entry previous = entries.put(key, entry);
+		if (previous != null) {
+			size -= previous.size();
+		}
+		size += entry.size();
+
+		Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		while (size > maxSize && it.hasNext()) {
+			Entry eldest = it.next().getValue();
+			if (eldest == entry) {
+				continue;
+			}
+			it.remove();
+			size -= eldest.size();
+			evictions++;
+		}
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		size = 0;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * @return number of cached conversions
+	 */
+	public synchronized int getCount() {
+		return entries.size();
+	}
+
+	/**
+	 * @return number of bytes held by the cached conversions
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	/**
+	 * Reads a stream completely.
+	 */
+	static byte[] toByteArray(InputStream is) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int n;
+		while ((n = is.read(buffer)) != -1) {
+			baos.write(buffer, 0, n);
+		}
+		return baos.toByteArray();
+	}
+
+	private interface Entry {
+
+		int size();
+
+		int parts();
+
+		InputStream getInputStream(int part);
+	}
+
+	private static class HeapEntry implements Entry {
+
+		private final byte[][] parts;
+
+		private final int size;
+
+		HeapEntry(byte[][] parts) {
+			this.parts = parts;
+			int size = 0;
+			for (byte[] part : parts) {
+				size += part.length;
+			}
+			this.size = size;
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public int parts() {
+			return parts.length;
+		}
+
+		@Override
+		public InputStream getInputStream(int part) {
+			return new ByteArrayInputStream(parts[part]);
+		}
+	}
+
+	/**
+	 * Holds all parts in one direct buffer, one after the other.
+	 */
+	private static class DirectEntry implements Entry {
+
+		private final ByteBuffer data;
+
+		/** Start of each part in the buffer, followed by the buffer end. */
+		private final int[] offsets;
+
+		DirectEntry(byte[][] parts) {
+			offsets = new int[parts.length + 1];
+			for (int i = 0; i < parts.length; i++) {
+				offsets[i + 1] = offsets[i] + parts[i].length;
+			}
+			data = ByteBuffer.allocateDirect(offsets[parts.length]);
+			for (byte[] part : parts) {
+				data.put(part);
+			}
+			data.flip();
+		}
+
+		@Override
+		public int size() {
+			return data.capacity();
+		}
+
+		@Override
+		public int parts() {
+			return offsets.length - 1;
+		}
+
+		@Override
+		public InputStream getInputStream(int part) {
+			final ByteBuffer buffer = data.duplicate();
+			buffer.limit(offsets[part + 1]);
+			buffer.position(offsets[part]);
+			return new InputStream() {
+
+				@Override
+				public int read() {
+					return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len) {
+					if (len == 0) {
+						return 0;
+					}
+					if (!buffer.hasRemaining()) {
+						return -1;
+					}
+					int n = Math.min(len, buffer.remaining());
+					buffer.get(b, off, n);
+					return n;
+				}
+
+				@Override
+				public int available() {
+					return buffer.remaining();
+				}
+			};
+		}
+	}
+}
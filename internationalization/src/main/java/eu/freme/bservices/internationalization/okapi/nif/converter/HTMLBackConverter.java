@@ -45,8 +45,47 @@ public class HTMLBackConverter {
 
 	public static final String HTML_DATA_CLASS_REF = "data-its-ta-class-refs";
 
-	/** The triple model. */
-	private Model model;
+	/**
+	 * The URIs of the properties translated to ITS attributes: entity
+	 * properties and terminology properties.
+	 */
+	private static final Set<String> ENRICHMENT_PROPS = new HashSet<String>(
+			Arrays.asList(RDFConstants.itsrdfPrefix
+					+ ItsRdfConstants.TA_IDENT_REF, RDFConstants.itsrdfPrefix
+					+ ItsRdfConstants.TA_CLASS_REF, RDFConstants.itsrdfPrefix
+					+ ItsRdfConstants.TA_CONFIDENCE, RDFConstants.itsrdfPrefix
+					+ ItsRdfConstants.TERM_INFO));
+
+	/**
+	 * Index of the triple model used during a single back conversion.
+	 */
+	private static class ModelIndex {
+
+		/** The text unit resources, sorted by offset. */
+		private List<TextUnitResource> textUnits;
+
+		/** The enrichment statements of each text unit resource. */
+		private Map<Resource, List<Statement>> enrichments = new HashMap<Resource, List<Statement>>();
+
+		/** The skeleton context string. */
+		private String skeletonContext;
+
+		/**
+		 * Gets the enrichment statements associated to a specific resource.
+		 * 
+		 * @param resource
+		 *            the text unit resource
+		 * @return the list of enrichment statements.
+		 */
+		private List<Statement> getEnrichmentStatements(
+				TextUnitResource resource) {
+			List<Statement> stmts = enrichments.get(resource.getResource());
+			if (stmts == null) {
+				stmts = Collections.emptyList();
+			}
+			return stmts;
+		}
+	}
 
 	/**
 	 * Default constructor.
@@ -87,26 +126,34 @@ public class HTMLBackConverter {
 		skeletonModel.read(reader, null, skeletonFormat);
 		Model enrichedModel = ModelFactory.createDefaultModel();
 		enrichedModel.read(enrichedFile, null, enrichedFormat);
-		model = skeletonModel.union(enrichedModel);
-		String originalFile = convertBack();
-		return new ByteArrayInputStream(originalFile.getBytes());
+		// the union model is local to this call, so that concurrent back
+		// conversions never share any state.
+		Model model = skeletonModel.union(enrichedModel);
+		String originalFile = convertBack(model);
+		return new ByteArrayInputStream(originalFile.getBytes(Charset
+				.forName("UTF-8")));
 	}
 
 	/**
 	 * Performs the back conversion.
 	 * 
+	 * @param model
+	 *            the union of the skeleton and the enriched models.
 	 * @return the original file string
 	 */
-	private String convertBack() {
+	private String convertBack(Model model) {
 
 		StringBuilder originalFileString = new StringBuilder();
-		String skeletonContext = findSkeletonContextString();
+		ModelIndex index = indexModel(model);
+		String skeletonContext = index.skeletonContext;
 		if (skeletonContext != null) {
 			int skeletonLastIdx = 0;
-			List<TextUnitResource> tuResources = listTextUnitResources();
-			for (TextUnitResource tuRes : tuResources) {
-				if (checkWasConvertedFromAndSetOffset(tuRes)) {
-					List<Statement> enrichmentStmts = findEnrichmentStatements(tuRes);
+			List<TextUnitResource> tuResources = index.textUnits;
+			for (int tuIdx = 0; tuIdx < tuResources.size(); tuIdx++) {
+				TextUnitResource tuRes = tuResources.get(tuIdx);
+				List<Statement> enrichmentStmts = index
+						.getEnrichmentStatements(tuRes);
+				if (tuRes.isConvertedFromSkeleton()) {
 					if (!enrichmentStmts.isEmpty()) {
 						// THE ANNOTATION MATCHES THE TEXT NODE
 						String parentNode = skeletonContext
@@ -144,10 +191,9 @@ public class HTMLBackConverter {
 					}
 				} else {
 					// no was converted from
-					List<Statement> entityStmts = findEnrichmentStatements(tuRes);
-					if (!entityStmts.isEmpty()) {
-						putAnnotationInTextUnitRes(tuRes, tuResources,
-								entityStmts);
+					if (!enrichmentStmts.isEmpty()) {
+						putAnnotationInTextUnitRes(tuIdx, tuResources,
+								enrichmentStmts);
 					}
 				}
 			}
@@ -163,17 +209,18 @@ public class HTMLBackConverter {
 	/**
 	 * Puts enrichment annotations into a text unit resource.
 	 * 
-	 * @param tuResource
-	 *            the text unit resource.
+	 * @param tuResIdx
+	 *            the position of the text unit resource in the list.
 	 * @param tuResList
 	 *            the list of text unit resources.
 	 * @param enrichmentStmts
 	 *            the entity statements.
 	 */
-	private void putAnnotationInTextUnitRes(TextUnitResource tuResource,
+	private void putAnnotationInTextUnitRes(int tuResIdx,
 			List<TextUnitResource> tuResList, List<Statement> enrichmentStmts) {
 
-		int index = tuResList.indexOf(tuResource) + 1;
+		TextUnitResource tuResource = tuResList.get(tuResIdx);
+		int index = tuResIdx + 1;
 		boolean found = false;
 		TextUnitResource currRes = null;
 		while (index < tuResList.size() && !found) {
@@ -214,170 +261,79 @@ public class HTMLBackConverter {
 	}
 
 	/**
-	 * Finds all the enrichment statements associated to a specific resource.
+	 * Indexes the triple model with a single pass over its statements. The
+	 * text unit resources, the offsets they were converted from and their
+	 * enrichment statements are collected at once, so that the back conversion
+	 * never needs to query the model again.
 	 * 
-	 * @param resource
-	 *            the resource
-	 * @return the list of enrichment statements.
+	 * @param model
+	 *            the triple model
+	 * @return the model index.
 	 */
-	private List<Statement> findEnrichmentStatements(TextUnitResource resource) {
+	private ModelIndex indexModel(Model model) {
 
-		List<Statement> enrichedStmts = new ArrayList<Statement>();
-		enrichedStmts.addAll(findEntityStmts(resource));
-		enrichedStmts.addAll(findTermStmts(resource));
-		return enrichedStmts;
-	}
+		ModelIndex index = new ModelIndex();
+		Set<TextUnitResource> tuResources = new LinkedHashSet<TextUnitResource>();
+		Map<Resource, String> wasConvertedFromURIs = new HashMap<Resource, String>();
+		List<Statement> isStringStmts = new ArrayList<Statement>();
+		String skeletonCtxtUri = null;
 
-	/**
-	 * Finds all the terminology statements associated to a specific resource
-	 * 
-	 * @param resource
-	 *            the resource
-	 * @return the list of terminology statements.
-	 */
-	private List<Statement> findTermStmts(TextUnitResource resource) {
-
-		List<Statement> termStmts = new ArrayList<Statement>();
-		Property termProp = model.createProperty(RDFConstants.itsrdfPrefix,
-				ItsRdfConstants.TERM_INFO);
-		StmtIterator stmts = model.listStatements(resource.getResource(),
-				termProp, (RDFNode) null);
+		StmtIterator stmts = model.listStatements();
 		while (stmts.hasNext()) {
-			termStmts.add(stmts.next());
-		}
-		return termStmts;
-	}
-
-	/**
-	 * Finds all entity statements associated to a specific resource.
-	 * 
-	 * @param resource
-	 *            the resource
-	 * @return the list of entity statements.
-	 */
-	private List<Statement> findEntityStmts(TextUnitResource resource) {
-
-		List<Statement> entityStmts = new ArrayList<Statement>();
-		Property identRef = model.createProperty(RDFConstants.itsrdfPrefix,
-				ItsRdfConstants.TA_IDENT_REF);
-		Property classRef = model.createProperty(RDFConstants.itsrdfPrefix,
-				ItsRdfConstants.TA_CLASS_REF);
-		Property taConfidence = model.createProperty(RDFConstants.itsrdfPrefix,
-				ItsRdfConstants.TA_CONFIDENCE);
-		StmtIterator identRefStmts = model.listStatements(
-				resource.getResource(), identRef, (RDFNode) null);
-		while (identRefStmts.hasNext()) {
-			entityStmts.add(identRefStmts.next());
-		}
-		StmtIterator classRefStmts = model.listStatements(
-				resource.getResource(), classRef, (RDFNode) null);
-		while (classRefStmts.hasNext()) {
-			entityStmts.add(classRefStmts.next());
-		}
-		StmtIterator confidenceRefStmts = model.listStatements(
-				resource.getResource(), taConfidence, (RDFNode) null);
-		while (confidenceRefStmts.hasNext()) {
-			entityStmts.add(confidenceRefStmts.next());
-		}
-
-		return entityStmts;
-	}
-
-	/**
-	 * Retrieves the list of text unit resources from the triple model.
-	 * 
-	 * @return the list of text unit resources.
-	 */
-	private List<TextUnitResource> listTextUnitResources() {
-
-		List<TextUnitResource> tuResources = new ArrayList<TextUnitResource>();
-		Property anchorOfProp = model
-				.createProperty(RDFConstants.ANCHOR_OF_PROP);
-		StmtIterator anchorStmts = model.listStatements(null, anchorOfProp,
-				(RDFNode) null);
-		// ResIterator tuResIt = model.listResourcesWithProperty(anchorOfProp);
-		Statement anchorStmt = null;
-		TextUnitResource unitRes = null;
-		while (anchorStmts.hasNext()) {
-			anchorStmt = anchorStmts.next();
-			unitRes = new TextUnitResource(anchorStmt.getSubject(), anchorStmt
-					.getObject().asLiteral().getString());
-			if (!tuResources.contains(unitRes)) {
-				tuResources.add(unitRes);
+			Statement stmt = stmts.next();
+			String predicate = stmt.getPredicate().getURI();
+			if (predicate.equals(RDFConstants.ANCHOR_OF_PROP)) {
+				tuResources.add(new TextUnitResource(stmt.getSubject(), stmt
+						.getObject().asLiteral().getString()));
+			} else if (predicate.equals(RDFConstants.WAS_CONVERTED_FROM_PROP)) {
+				String wasConvertedURI = stmt.getObject().asResource()
+						.getURI();
+				if (!wasConvertedFromURIs.containsKey(stmt.getSubject())) {
+					wasConvertedFromURIs.put(stmt.getSubject(),
+							wasConvertedURI);
+				}
+				if (skeletonCtxtUri == null) {
+					skeletonCtxtUri = wasConvertedURI;
+				}
+			} else if (predicate.equals(RDFConstants.IS_STRING_PROP)) {
+				isStringStmts.add(stmt);
+			} else if (ENRICHMENT_PROPS.contains(predicate)) {
+				List<Statement> enrichmentStmts = index.enrichments.get(stmt
+						.getSubject());
+				if (enrichmentStmts == null) {
+					enrichmentStmts = new ArrayList<Statement>();
+					index.enrichments.put(stmt.getSubject(), enrichmentStmts);
+				}
+				enrichmentStmts.add(stmt);
 			}
 		}
-		Collections.sort(tuResources, new TextUnitResComparator());
-		return tuResources;
-	}
 
-	/**
-	 * Retrieves the skeleton context string from the triple model.
-	 * 
-	 * @return the skeleton context string.
-	 */
-	private String findSkeletonContextString() {
-
-		Property wasConvertedFromProp = model
-				.createProperty(RDFConstants.WAS_CONVERTED_FROM_PROP);
-		NodeIterator wasConvFromNodes = model
-				.listObjectsOfProperty(wasConvertedFromProp);
-		String skeletonContextString = null;
-		if (wasConvFromNodes != null && wasConvFromNodes.hasNext()) {
-			RDFNode node = wasConvFromNodes.next();
-			String skeletonCtxtUriPrefix = node.asResource().getURI();
-			int offsetIdx = skeletonCtxtUriPrefix.indexOf(URI_OFFSET_PREFIX);
-			skeletonCtxtUriPrefix = skeletonCtxtUriPrefix.substring(0,
-					offsetIdx);
-			Property isStringProp = model
-					.createProperty(RDFConstants.IS_STRING_PROP);
-			StmtIterator isStrStmts = model.listStatements(null, isStringProp,
-					(RDFNode) null);
-			while (isStrStmts.hasNext() && skeletonContextString == null) {
-				Statement stmt = isStrStmts.next();
+		if (skeletonCtxtUri != null) {
+			String skeletonCtxtUriPrefix = skeletonCtxtUri.substring(0,
+					skeletonCtxtUri.indexOf(URI_OFFSET_PREFIX));
+			for (Statement stmt : isStringStmts) {
 				if (stmt.getSubject().getURI()
 						.startsWith(skeletonCtxtUriPrefix)) {
-					skeletonContextString = stmt.getObject().asLiteral()
+					index.skeletonContext = stmt.getObject().asLiteral()
 							.getString();
+					break;
 				}
 			}
-
 		}
 
-		return skeletonContextString;
-	}
-
-	/**
-	 * Checks if the "wasConvertedFrom" property is defined for the resource
-	 * passed as parameter. If it is the case, the
-	 * <code>wasConvFromStartIdx</code> and the <code>wasConvFromEndIdx</code>
-	 * are properly valued.
-	 * 
-	 * @param resource
-	 *            the text unit resource.
-	 * @return <code>true</code> if the "wasConvertedFrom" property is defined
-	 *         for this resource; <code>false</code> otherwise.
-	 */
-	private boolean checkWasConvertedFromAndSetOffset(TextUnitResource resource) {
-
-		boolean wasConvertedFromExists = false;
-		Property wasConvertedFromProp = model
-				.createProperty(RDFConstants.WAS_CONVERTED_FROM_PROP);
-		// NodeIterator wasConvNodesIt = model.listObjectsOfProperty(
-		// resource.getResource(), wasConvertedFromProp);
-		StmtIterator wasConvertedStmts = model.listStatements(
-				resource.getResource(), wasConvertedFromProp, (RDFNode) null);
-		if (wasConvertedStmts != null && wasConvertedStmts.hasNext()) {
-			Statement wasConvStmt = wasConvertedStmts.next();
-			wasConvertedFromExists = true;
-			String wasConvertedURI = wasConvStmt.getObject().asResource()
-					.getURI();
-			// String wasConvertedURI = wasConvNodesIt.next().asResource()
-			// .getURI();
-			String[] wasConvOffset = getOffsetFromURI(wasConvertedURI);
-			resource.setWasConvFromStartIdx(Integer.valueOf(wasConvOffset[0]));
-			resource.setWasConvFromEndIdx(Integer.valueOf(wasConvOffset[1]));
+		index.textUnits = new ArrayList<TextUnitResource>(tuResources);
+		for (TextUnitResource tuRes : index.textUnits) {
+			String wasConvertedURI = wasConvertedFromURIs.get(tuRes
+					.getResource());
+			if (wasConvertedURI != null) {
+				String[] wasConvOffset = getOffsetFromURI(wasConvertedURI);
+				tuRes.setWasConvFromStartIdx(Integer.valueOf(wasConvOffset[0]));
+				tuRes.setWasConvFromEndIdx(Integer.valueOf(wasConvOffset[1]));
+				tuRes.setConvertedFromSkeleton(true);
+			}
 		}
-		return wasConvertedFromExists;
+		Collections.sort(index.textUnits, new TextUnitResComparator());
+		return index;
 	}
 
 	/**
@@ -573,6 +529,9 @@ class TextUnitResource {
 
 	private int additionalOffset;
 
+	/** States if the resource was converted from the skeleton context. */
+	private boolean convertedFromSkeleton;
+
 	/**
 	 * Constructor.
 	 * 
@@ -681,6 +640,28 @@ class TextUnitResource {
 		this.wasConvFromEndIdx = wasConvFromEndIdx;
 	}
 
+	/**
+	 * States if the resource was converted from the skeleton context, i.e. if
+	 * its offset in the skeleton context is known.
+	 * 
+	 * @return <code>true</code> if the "wasConvertedFrom" property is defined
+	 *         for this resource; <code>false</code> otherwise.
+	 */
+	public boolean isConvertedFromSkeleton() {
+		return convertedFromSkeleton;
+	}
+
+	/**
+	 * Sets if the resource was converted from the skeleton context.
+	 * 
+	 * @param convertedFromSkeleton
+	 *            <code>true</code> if the "wasConvertedFrom" property is
+	 *            defined for this resource.
+	 */
+	public void setConvertedFromSkeleton(boolean convertedFromSkeleton) {
+		this.convertedFromSkeleton = convertedFromSkeleton;
+	}
+
 	public int getAdditionalOffset() {
 		return additionalOffset;
 	}
@@ -735,7 +716,16 @@ class TextUnitResComparator implements Comparator<TextUnitResource> {
 	public int compare(TextUnitResource o1, TextUnitResource o2) {
 
 		int retValue = 0;
-		if ((o1.getStartIdx() >= o2.getStartIdx() && o1.getEndIdx() <= o2
+		if (o1.getStartIdx() == o2.getStartIdx()
+				&& o1.getEndIdx() == o2.getEndIdx()) {
+			// same range: order by text and then by resource, so that the
+			// order does not depend on the order of the statements in the model
+			retValue = o1.getText().compareTo(o2.getText());
+			if (retValue == 0) {
+				retValue = o1.getResource().toString()
+						.compareTo(o2.getResource().toString());
+			}
+		} else if ((o1.getStartIdx() >= o2.getStartIdx() && o1.getEndIdx() <= o2
 				.getEndIdx())) {
 			retValue = -1;
 		} else if ((o2.getStartIdx() >= o1.getStartIdx() && o2.getEndIdx() <= o1
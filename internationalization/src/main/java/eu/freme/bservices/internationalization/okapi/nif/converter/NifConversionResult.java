@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2015 Agro-Know, Deutsches Forschungszentrum für Künstliche Intelligenz, iMinds,
+ * Institut für Angewandte Informatik e. V. an der Universität Leipzig,
+ * Istituto Superiore Mario Boella, Tilde, Vistatec, WRIPL (http://freme-project.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.freme.bservices.internationalization.okapi.nif.converter;
+
+import java.io.InputStream;
+
+/**
+ * The result of a conversion producing both a NIF document and its NIF
+ * skeleton document.
+ */
+public class NifConversionResult {
+
+	/** The NIF document. */
+	private final InputStream nif;
+
+	/** The NIF skeleton document. */
+	private final InputStream skeleton;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param nif
+	 *            the NIF document
+	 * @param skeleton
+	 *            the NIF skeleton document
+	 */
+	public NifConversionResult(InputStream nif, InputStream skeleton) {
+		this.nif = nif;
+		this.skeleton = skeleton;
+	}
+
+	/**
+	 * Gets the NIF document.
+	 * 
+	 * @return the NIF input stream
+	 */
+	public InputStream getNif() {
+		return nif;
+	}
+
+	/**
+	 * Gets the NIF skeleton document.
+	 * 
+	 * @return the NIF skeleton input stream
+	 */
+	public InputStream getSkeleton() {
+		return skeleton;
+	}
+}
@@ -17,29 +17,27 @@
  */
 package eu.freme.bservices.internationalization.okapi.nif.converter;
 
-import java.io.File;
-import java.io.FileInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 
+import com.hp.hpl.jena.rdf.model.Model;
 import eu.freme.bservices.internationalization.okapi.nif.filter.RDFConstants;
+import eu.freme.bservices.internationalization.okapi.nif.step.NifDualWriterStep;
 import eu.freme.bservices.internationalization.okapi.nif.step.NifParameters;
 import eu.freme.bservices.internationalization.okapi.nif.step.NifSkeletonWriterStep;
 import eu.freme.bservices.internationalization.okapi.nif.step.NifWriterStep;
 import net.sf.okapi.common.LocaleId;
 import net.sf.okapi.common.MimeTypeMapper;
+import net.sf.okapi.common.filters.IFilter;
 import net.sf.okapi.common.pipeline.PipelineReturnValue;
 import net.sf.okapi.common.resource.RawDocument;
-import net.sf.okapi.filters.its.html5.HTML5Filter;
-import net.sf.okapi.filters.openoffice.OpenOfficeFilter;
-import net.sf.okapi.filters.xliff.XLIFFFilter;
-import net.sf.okapi.filters.xml.XMLFilter;
 import net.sf.okapi.lib.extra.pipelinebuilder.XBatch;
 import net.sf.okapi.lib.extra.pipelinebuilder.XBatchItem;
 import net.sf.okapi.lib.extra.pipelinebuilder.XParameter;
 import net.sf.okapi.lib.extra.pipelinebuilder.XPipeline;
 import net.sf.okapi.lib.extra.pipelinebuilder.XPipelineStep;
 import net.sf.okapi.steps.common.RawDocumentToFilterEventsStep;
-import org.apache.log4j.Logger;
 
 /**
  * This class provides methods for converting a XLIFF and HTML files to NIF
@@ -47,68 +45,53 @@ import org.apache.log4j.Logger;
  */
 public class NifConverter {
 
-	private Logger logger = Logger.getLogger(NifConverter.class);
+	/** The Okapi filters, shared by all conversions of this converter. */
+	private final OkapiFilterRegistry filterRegistry = new OkapiFilterRegistry();
 
-	private InputStream convert2NifWithMarkers(final InputStream rawDocument,
-			String mimeType, final LocaleId sourceLocale,
-			final String nifUriPrefix) throws ConversionException {
-
-		InputStream nifInStream = null;
-		
-		File outputFile = new File(System.getProperty("user.home"),
-				"nifConvertedFile-skeleton" + System.currentTimeMillis());
-		ConversionException exception = null;
-		try {
-			// creates a raw document object from the input stream
-			RawDocument document = createRawDocument(rawDocument, mimeType,
-					sourceLocale);
-			/*
-			 * Create the Okapi pipeline. It includes following steps: -
-			 * RawDocumentToFilterEventsStep: read a raw document by using the
-			 * appropriate filter depending on the MIME Type. Then sends filter
-			 * events. - NifWriterStep: handles the events from the filter and
-			 * creates a NIF document.
-			 */
-			XPipeline pipeline = new XPipeline(
-					"Raw document to NIF conversion", new XBatch(
-							new XBatchItem(document)),
-					new RawDocumentToFilterEventsStep(),
-					 new XPipelineStep(
-					 new NifSkeletonWriterStep(), new XParameter(
-					 NifParameters.OUTPUT_URI, outputFile
-					 .toURI().toString()),
-					 new XParameter(NifParameters.NIF_LANGUAGE,
-					 RDFConstants.RDFSerialization.TURTLE.toRDFLang()),
-					 new XParameter(NifParameters.NIF_URI_PREFIX,
-					 nifUriPrefix)));
+	/**
+	 * In-memory output for a single conversion. The converted document is
+	 * handed to the caller without copying the underlying buffer.
+	 */
+	private static class NifOutputStream extends ByteArrayOutputStream {
 
-			// execute the pipeline
-			PipelineReturnValue retValue = pipeline.execute();
-			if (retValue.equals(PipelineReturnValue.SUCCEDED)) {
-				// Retrieve the input stream from the output file and then
-				// delete it.
-				nifInStream = new FileInputStream(outputFile);
-			} else {
-				exception = new ConversionException(
-						"Unexpected pipeline exit status: " + retValue.name());
-			}
-		} catch (UnsupportedMimeTypeException e) {
-			exception = new ConversionException(e.getMessage(), e);
-		} catch (Exception e) {
-			exception = new ConversionException(
-					"Error while converting the document", e);
-		}finally {
-			if (outputFile.exists()) {
-				boolean fileDeleted = outputFile.delete();
-				if(!fileDeleted)
-					logger.warn("Could not delete temporary file: "+outputFile);
-			}
+		public NifOutputStream() {
+			super(8192);
 		}
-		if (exception != null) {
-			throw exception;
+
+		public InputStream toInputStream() {
+			return new ByteArrayInputStream(buf, 0, count);
 		}
+	}
 
-		return nifInStream;
+	/**
+	 * Converts a file to a NIF skeleton document, i.e. a NIF document keeping
+	 * track of the markups of the original file.
+	 * 
+	 * @param rawDocument
+	 *            the document to be converted
+	 * @param mimeType
+	 *            the document MIME type
+	 * @param sourceLocale
+	 *            the source locale
+	 * @param nifUriPrefix
+	 *            the URI prefix to be used for resources in NIF document
+	 * @return the NIF input stream
+	 * @throws ConversionException
+	 *             exception raised when an error occurs while converting a
+	 *             document to NIF.
+	 */
+	private InputStream convert2NifWithMarkers(final InputStream rawDocument,
+			String mimeType, final LocaleId sourceLocale,
+			final String nifUriPrefix) throws ConversionException {
+
+		NifOutputStream outputStream = new NifOutputStream();
+		NifSkeletonWriterStep skeletonWriterStep = new NifSkeletonWriterStep();
+		skeletonWriterStep.setOutputStream(outputStream);
+		execute(rawDocument, mimeType, sourceLocale, new XPipelineStep(
+				skeletonWriterStep, new XParameter(NifParameters.NIF_LANGUAGE,
+						RDFConstants.RDFSerialization.TURTLE.toRDFLang()),
+				new XParameter(NifParameters.NIF_URI_PREFIX, nifUriPrefix)));
+		return outputStream.toInputStream();
 	}
 
 	/**
@@ -131,75 +114,148 @@ public class NifConverter {
 			String mimeType, final LocaleId sourceLocale,
 			final String nifUriPrefix) throws ConversionException {
 
-		InputStream nifInStream = null;
 		/*
-		 * The Okapi step saves the NIF file into the file system. This is the
-		 * file where it should be saved. The user home folder is chosen in
-		 * order to be sure that the application has write access.
+		 * The NIF writer serializes the model straight into a buffer owned by
+		 * this call, so that nothing is written to the file system and
+		 * concurrent conversions never share an output.
 		 */
-		File outputFile = new File(System.getProperty("user.home"),
-				"nifConvertedFile" + System.currentTimeMillis());
+		NifOutputStream outputStream = new NifOutputStream();
+		NifWriterStep nifWriterStep = new NifWriterStep();
+		nifWriterStep.setOutputStream(outputStream);
+		execute(rawDocument, mimeType, sourceLocale, new XPipelineStep(
+				nifWriterStep, new XParameter(NifParameters.NIF_LANGUAGE,
+						RDFConstants.RDFSerialization.TURTLE.toRDFLang()),
+				new XParameter(NifParameters.NIF_URI_PREFIX, nifUriPrefix)));
+		return outputStream.toInputStream();
+	}
+
+	/**
+	 * Converts a file to a NIF model, without serializing it.
+	 * 
+	 * @param rawDocument
+	 *            the document to be converted
+	 * @param mimeType
+	 *            the document MIME type
+	 * @param sourceLocale
+	 *            the source locale
+	 * @param nifUriPrefix
+	 *            the URI prefix to be used for resources in NIF document
+	 * @return the NIF model
+	 * @throws ConversionException
+	 *             exception raised when an error occurs while converting a
+	 *             document to NIF.
+	 */
+	private Model convert2NifModel(final InputStream rawDocument,
+			String mimeType, final LocaleId sourceLocale,
+			final String nifUriPrefix) throws ConversionException {
 
+		// without output stream and output URI the writer only builds the model
+		NifWriterStep nifWriterStep = new NifWriterStep();
+		execute(rawDocument, mimeType, sourceLocale, new XPipelineStep(
+				nifWriterStep, new XParameter(NifParameters.NIF_URI_PREFIX,
+						nifUriPrefix)));
+		return nifWriterStep.getModel();
+	}
 
-		ConversionException exception = null;
+	/**
+	 * Converts a file both to NIF format and to a NIF skeleton document, with
+	 * a single pass over the file.
+	 * 
+	 * @param rawDocument
+	 *            the document to be converted
+	 * @param mimeType
+	 *            the document MIME type
+	 * @param sourceLocale
+	 *            the source locale
+	 * @param nifUriPrefix
+	 *            the URI prefix to be used for resources in NIF document
+	 * @return the NIF and NIF skeleton input streams
+	 * @throws ConversionException
+	 *             exception raised when an error occurs while converting a
+	 *             document to NIF.
+	 */
+	private NifConversionResult convert2NifWithSkeleton(
+			final InputStream rawDocument, String mimeType,
+			final LocaleId sourceLocale, final String nifUriPrefix)
+			throws ConversionException {
+
+		NifOutputStream nifOutputStream = new NifOutputStream();
+		NifOutputStream skeletonOutputStream = new NifOutputStream();
+		NifDualWriterStep dualWriterStep = new NifDualWriterStep();
+		dualWriterStep.setNifOutputStream(nifOutputStream);
+		dualWriterStep.setSkeletonOutputStream(skeletonOutputStream);
+		execute(rawDocument, mimeType, sourceLocale, new XPipelineStep(
+				dualWriterStep, new XParameter(NifParameters.NIF_LANGUAGE,
+						RDFConstants.RDFSerialization.TURTLE.toRDFLang()),
+				new XParameter(NifParameters.NIF_URI_PREFIX, nifUriPrefix)));
+		return new NifConversionResult(nifOutputStream.toInputStream(),
+				skeletonOutputStream.toInputStream());
+	}
+
+	/**
+	 * Executes the Okapi pipeline converting a raw document with a specific
+	 * NIF writer step.
+	 * 
+	 * @param rawDocument
+	 *            the document to be converted
+	 * @param mimeType
+	 *            the document MIME type
+	 * @param sourceLocale
+	 *            the source locale
+	 * @param nifStep
+	 *            the step writing the NIF document
+	 * @throws ConversionException
+	 *             exception raised when an error occurs while converting a
+	 *             document to NIF.
+	 */
+	private void execute(final InputStream rawDocument, String mimeType,
+			final LocaleId sourceLocale, XPipelineStep nifStep)
+			throws ConversionException {
+
+		IFilter filter = null;
+		boolean succeeded = false;
 		try {
 			// creates a raw document object from the input stream
 			RawDocument document = createRawDocument(rawDocument, mimeType,
 					sourceLocale);
+			// takes a ready filter instance from the registry
+			filter = filterRegistry.acquire(mimeType);
 			/*
 			 * Create the Okapi pipeline. It includes following steps: -
 			 * RawDocumentToFilterEventsStep: read a raw document by using the
 			 * appropriate filter depending on the MIME Type. Then sends filter
-			 * events. - NifWriterStep: handles the events from the filter and
+			 * events. - the NIF step: handles the events from the filter and
 			 * creates a NIF document.
 			 */
 			XPipeline pipeline = new XPipeline(
 					"Raw document to NIF conversion", new XBatch(
 							new XBatchItem(document)),
-					new RawDocumentToFilterEventsStep(),
-					// new XPipelineStep(
-					// new NifSkeletonWriterStep(), new XParameter(
-					// NifParameters.OUTPUT_URI, skeletonOutputFile
-					// .toURI().toString()),
-					// new XParameter(NifParameters.NIF_LANGUAGE,
-					// RDFSerialization.TURTLE.toRDFLang()),
-					// new XParameter(NifParameters.NIF_URI_PREFIX,
-					// nifUriPrefix)),
-					new XPipelineStep(new NifWriterStep(), new XParameter(
-							NifParameters.OUTPUT_URI, outputFile.toURI()
-									.toString()), new XParameter(
-							NifParameters.NIF_LANGUAGE, RDFConstants.RDFSerialization.TURTLE
-									.toRDFLang()), new XParameter(
-							NifParameters.NIF_URI_PREFIX, nifUriPrefix)));
+					new RawDocumentToFilterEventsStep(filter), nifStep);
 
 			// execute the pipeline
 			PipelineReturnValue retValue = pipeline.execute();
-			if (retValue.equals(PipelineReturnValue.SUCCEDED)) {
-				// Retrieve the input stream from the output file and then
-				// delete it.
-				nifInStream = new FileInputStream(outputFile);
-			} else {
-				exception = new ConversionException(
+			if (!retValue.equals(PipelineReturnValue.SUCCEDED)) {
+				throw new ConversionException(
 						"Unexpected pipeline exit status: " + retValue.name());
 			}
+			succeeded = true;
+		} catch (ConversionException e) {
+			throw e;
 		} catch (UnsupportedMimeTypeException e) {
-			exception = new ConversionException(e.getMessage(), e);
+			throw new ConversionException(e.getMessage(), e);
 		} catch (Exception e) {
-			exception = new ConversionException(
+			throw new ConversionException(
 					"Error while converting the document", e);
-		}finally {
-			if (outputFile.exists()) {
-				boolean fileDeleted = outputFile.delete();
-				if(!fileDeleted)
-					logger.warn("Could not delete temporary file: "+outputFile);
+		} finally {
+			if (filter != null) {
+				if (succeeded) {
+					filterRegistry.release(mimeType, filter);
+				} else {
+					// a failed filter may still hold the state of the document
+					filter.close();
+				}
 			}
 		}
-		if (exception != null) {
-			throw exception;
-		}
-
-		return nifInStream;
-
 	}
 
 	/**
@@ -222,7 +278,7 @@ public class NifConverter {
 		// Creates the RawDocument object.
 		RawDocument document = new RawDocument(inStream, "UTF-8", sourceLocale);
 		// Sets the appropriate filter depending on the MIME type
-		document.setFilterConfigId(getFilterIdFromMimeType(mimeType));
+		document.setFilterConfigId(filterRegistry.getConfigId(mimeType));
 
 		/*
 		 * The code below has been added, because when dealing with XLIFF files,
@@ -254,43 +310,6 @@ public class NifConverter {
 		return new LocaleId("en");
 	}
 
-	/**
-	 * Gets the appropriate Okapi filter based on the MIME type string.
-	 * 
-	 * @param mimeType
-	 *            the MIME type string
-	 * @return the filter configuration ID
-	 * @throws UnsupportedMimeTypeException
-	 *             this is exception is raised if an unsupported MIME type is
-	 *             passed as parameter.
-	 */
-	private String getFilterIdFromMimeType(String mimeType)
-			throws UnsupportedMimeTypeException {
-
-		String filterId = null;
-		switch (mimeType) {
-		case MimeTypeMapper.XLIFF_MIME_TYPE:
-			filterId = new XLIFFFilter().getConfigurations().get(0).configId;
-			break;
-		case MimeTypeMapper.HTML_MIME_TYPE:
-			filterId = new HTML5Filter().getConfigurations().get(0).configId;
-			// filterId = new HtmlFilter().getConfigurations().get(0).configId;
-			break;
-		case MimeTypeMapper.XML_MIME_TYPE:
-			filterId = new XMLFilter().getConfigurations().get(0).configId;
-			break;
-		case MimeTypeMapper.OPENOFFICE_MIME_TYPE:
-			filterId = new OpenOfficeFilter().getConfigurations().get(0).configId;
-			break;
-		default:
-			throw new UnsupportedMimeTypeException(mimeType, new String[] {
-					MimeTypeMapper.XLIFF_MIME_TYPE,
-					MimeTypeMapper.HTML_MIME_TYPE });
-		}
-		return filterId;
-
-	}
-
 	/**
 	 * Converts a file to NIF format.
 	 * 
@@ -361,6 +380,51 @@ public class NifConverter {
 		return convert2NifWithMarkers(rawDocument, mimeType, (LocaleId) null, uriPrefix);
 	}
 
+	/**
+	 * Converts a file both to NIF format and to a NIF skeleton document. The
+	 * file is parsed only once.
+	 * 
+	 * @param rawDocument
+	 *            the document to be converted
+	 * @param mimeType
+	 *            the document MIME type
+	 * @param uriPrefix
+	 *            the URI prefix to be used for resources in NIF document
+	 * @return the NIF and NIF skeleton input streams
+	 * @throws ConversionException
+	 *             exception raised when an error occurs while converting a
+	 *             document to NIF.
+	 */
+	public NifConversionResult convert2NifWithSkeleton(
+			final InputStream rawDocument, final String mimeType,
+			final String uriPrefix) throws ConversionException {
+
+		return convert2NifWithSkeleton(rawDocument, mimeType, (LocaleId) null,
+				uriPrefix);
+	}
+
+	/**
+	 * Converts a file to a NIF model.
+	 * 
+	 * @param rawDocument
+	 *            the document to be converted
+	 * @param mimeType
+	 *            the document MIME type
+	 * @param uriPrefix
+	 *            the URI prefix to be used for resources in NIF document
+	 * @return the NIF model
+	 * @throws ConversionException
+	 *             exception raised when an error occurs while converting a
+	 *             document to NIF.
+	 */
+	public Model convert2NifModel(final InputStream rawDocument,
+			final String mimeType, final String uriPrefix)
+			throws ConversionException {
+
+		return convert2NifModel(rawDocument, mimeType, (LocaleId) null,
+				uriPrefix);
+	}
+
 //	public static void main(String[] args) {
 //
 //		try {
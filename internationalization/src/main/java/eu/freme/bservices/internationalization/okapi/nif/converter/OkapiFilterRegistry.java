@@ -0,0 +1,197 @@
+/**
+ * Copyright (C) 2015 Agro-Know, Deutsches Forschungszentrum für Künstliche Intelligenz, iMinds,
+ * Institut für Angewandte Informatik e. V. an der Universität Leipzig,
+ * Istituto Superiore Mario Boella, Tilde, Vistatec, WRIPL (http://freme-project.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.freme.bservices.internationalization.okapi.nif.converter;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.okapi.common.MimeTypeMapper;
+import net.sf.okapi.common.filters.IFilter;
+import net.sf.okapi.filters.its.html5.HTML5Filter;
+import net.sf.okapi.filters.openoffice.OpenOfficeFilter;
+import net.sf.okapi.filters.xliff.XLIFFFilter;
+import net.sf.okapi.filters.xml.XMLFilter;
+
+/**
+ * Registry of the Okapi filters used by the NIF conversion. The filter
+ * configuration of each supported MIME type is resolved once, and filter
+ * instances are pooled per MIME type, so that they are reused by subsequent
+ * conversions instead of being created for each document.
+ */
+public class OkapiFilterRegistry {
+
+	/** Maximum number of idle filter instances kept per MIME type. */
+	private static final int DEFAULT_MAX_IDLE = 16;
+
+	/** The filter configuration IDs by MIME type. */
+	private final Map<String, String> configIds;
+
+	/** The idle filter instances by MIME type. */
+	private final Map<String, Pool> pools;
+
+	/** Maximum number of idle filter instances kept per MIME type. */
+	private final int maxIdle;
+
+	/**
+	 * Constructor.
+	 */
+	public OkapiFilterRegistry() {
+		this(DEFAULT_MAX_IDLE);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param maxIdle
+	 *            maximum number of idle filter instances kept per MIME type
+	 */
+	public OkapiFilterRegistry(int maxIdle) {
+		this.maxIdle = maxIdle;
+		Map<String, String> ids = new HashMap<String, String>();
+		Map<String, Pool> filterPools = new ConcurrentHashMap<String, Pool>();
+		for (String mimeType : new String[] { MimeTypeMapper.XLIFF_MIME_TYPE,
+				MimeTypeMapper.HTML_MIME_TYPE, MimeTypeMapper.XML_MIME_TYPE,
+				MimeTypeMapper.OPENOFFICE_MIME_TYPE }) {
+			// the filter used to read the configuration is the first pooled
+			// instance
+			IFilter filter = createFilter(mimeType);
+			ids.put(mimeType, filter.getConfigurations().get(0).configId);
+			Pool pool = new Pool();
+			pool.release(filter, maxIdle);
+			filterPools.put(mimeType, pool);
+		}
+		configIds = Collections.unmodifiableMap(ids);
+		pools = filterPools;
+	}
+
+	/**
+	 * Gets the filter configuration ID of a MIME type.
+	 * 
+	 * @param mimeType
+	 *            the MIME type string
+	 * @return the filter configuration ID
+	 * @throws UnsupportedMimeTypeException
+	 *             this is exception is raised if an unsupported MIME type is
+	 *             passed as parameter.
+	 */
+	public String getConfigId(String mimeType)
+			throws UnsupportedMimeTypeException {
+		String configId = configIds.get(mimeType);
+		if (configId == null) {
+			throw unsupported(mimeType);
+		}
+		return configId;
+	}
+
+	/**
+	 * Takes a filter for a MIME type from the pool, or creates a new one if
+	 * all pooled filters are in use. The filter must be given back with
+	 * {@link #release(String, IFilter)} once the conversion is over, or closed
+	 * instead if the conversion failed.
+	 * 
+	 * @param mimeType
+	 *            the MIME type string
+	 * @return the filter
+	 * @throws UnsupportedMimeTypeException
+	 *             this is exception is raised if an unsupported MIME type is
+	 *             passed as parameter.
+	 */
+	public IFilter acquire(String mimeType)
+			throws UnsupportedMimeTypeException {
+		Pool pool = pools.get(mimeType);
+		if (pool == null) {
+			throw unsupported(mimeType);
+		}
+		IFilter filter = pool.acquire();
+		return filter != null ? filter : createFilter(mimeType);
+	}
+
+	/**
+	 * Gives a filter back to the pool of its MIME type. The filter is closed
+	 * and dropped if the pool is full.
+	 * 
+	 * @param mimeType
+	 *            the MIME type string
+	 * @param filter
+	 *            the filter returned by {@link #acquire(String)}
+	 */
+	public void release(String mimeType, IFilter filter) {
+		Pool pool = pools.get(mimeType);
+		if (pool == null || !pool.release(filter, maxIdle)) {
+			filter.close();
+		}
+	}
+
+	/**
+	 * Creates a new filter for a MIME type.
+	 * 
+	 * @param mimeType
+	 *            the MIME type string
+	 * @return the filter
+	 */
+	private IFilter createFilter(String mimeType) {
+		switch (mimeType) {
+		case MimeTypeMapper.XLIFF_MIME_TYPE:
+			return new XLIFFFilter();
+		case MimeTypeMapper.HTML_MIME_TYPE:
+			return new HTML5Filter();
+		case MimeTypeMapper.XML_MIME_TYPE:
+			return new XMLFilter();
+		case MimeTypeMapper.OPENOFFICE_MIME_TYPE:
+			return new OpenOfficeFilter();
+		default:
+			throw new IllegalArgumentException(mimeType);
+		}
+	}
+
+	private UnsupportedMimeTypeException unsupported(String mimeType) {
+		return new UnsupportedMimeTypeException(mimeType, new String[] {
+				MimeTypeMapper.XLIFF_MIME_TYPE, MimeTypeMapper.HTML_MIME_TYPE });
+	}
+
+	/**
+	 * The idle filter instances of a MIME type.
+	 */
+	private static class Pool {
+
+		private final ConcurrentLinkedQueue<IFilter> filters = new ConcurrentLinkedQueue<IFilter>();
+
+		private final AtomicInteger size = new AtomicInteger();
+
+		public IFilter acquire() {
+			IFilter filter = filters.poll();
+			if (filter != null) {
+				size.decrementAndGet();
+			}
+			return filter;
+		}
+
+		public boolean release(IFilter filter, int maxIdle) {
+			if (size.incrementAndGet() > maxIdle) {
+				size.decrementAndGet();
+				return false;
+			}
+			filters.offer(filter);
+			return true;
+		}
+	}
+}
@@ -125,7 +125,8 @@ public abstract class AbstractNifWriterFilter implements IFilterWriter {
 				}
 			}
 
-			if (outputPath != null) {
+			// the parameters hold an empty string when no output URI is set
+			if (outputPath != null && !outputPath.isEmpty()) {
 				Util.createDirectories(outputPath);
 				File file = new File(new URI(outputPath));
 				if (file.exists()) {
@@ -152,6 +153,7 @@ public abstract class AbstractNifWriterFilter implements IFilterWriter {
 				} else {
 					model.write(writer);
 				}
+				writer.flush();
 				outputStream.close();
 				/*
 				// dummy deletion to detect file access
@@ -169,6 +171,16 @@ public abstract class AbstractNifWriterFilter implements IFilterWriter {
 
 	}
 
+	/**
+	 * Gets the Jena model built by this filter.
+	 * 
+	 * @return the model, or <code>null</code> if no document has been
+	 *         processed yet.
+	 */
+	public Model getModel() {
+		return model;
+	}
+
 	/**
 	 * Gets the appropriate output file extension based on the RDF serialization
 	 * format chosen for the NIF file.
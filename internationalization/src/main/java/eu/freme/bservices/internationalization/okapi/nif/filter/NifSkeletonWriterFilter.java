@@ -25,7 +25,6 @@ import net.sf.okapi.common.Event;
 import net.sf.okapi.common.LocaleId;
 import net.sf.okapi.common.resource.*;
 
-import java.io.OutputStreamWriter;
 import java.util.*;
 import java.util.Map.Entry;
 
@@ -402,7 +401,6 @@ public class NifSkeletonWriterFilter extends AbstractNifWriterFilter {
 									+ CONTEXT1_URI_DOC, currTextInfo);
 				}
 			}
-			model.write(new OutputStreamWriter(System.out), "TTL");
 
 		} catch (Exception e) {
 			e.printStackTrace();
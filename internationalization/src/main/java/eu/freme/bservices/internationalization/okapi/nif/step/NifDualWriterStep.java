@@ -0,0 +1,291 @@
+/**
+ * Copyright (C) 2015 Agro-Know, Deutsches Forschungszentrum für Künstliche Intelligenz, iMinds,
+ * Institut für Angewandte Informatik e. V. an der Universität Leipzig,
+ * Istituto Superiore Mario Boella, Tilde, Vistatec, WRIPL (http://freme-project.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.freme.bservices.internationalization.okapi.nif.step;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import eu.freme.bservices.internationalization.okapi.nif.filter.NifSkeletonWriterFilter;
+import eu.freme.bservices.internationalization.okapi.nif.filter.NifWriterFilter;
+import net.sf.okapi.common.Event;
+import net.sf.okapi.common.IParameters;
+import net.sf.okapi.common.MimeTypeMapper;
+import net.sf.okapi.common.pipeline.BasePipelineStep;
+import net.sf.okapi.common.resource.DocumentPart;
+import net.sf.okapi.common.resource.ITextUnit;
+import net.sf.okapi.common.resource.StartDocument;
+
+import java.io.OutputStream;
+
+/**
+ * This step can be used in the Okapi pipeline. It sends all events received
+ * from the pipeline both to the NIF writer filter and to the NIF skeleton
+ * writer filter, so that a NIF document and its skeleton are created with a
+ * single pass over the original document.
+ */
+public class NifDualWriterStep extends BasePipelineStep {
+
+	/** The parameters for this step. */
+	private NifParameters params;
+
+	/** The NIF filter writer object. */
+	private NifWriterFilter nifWriter;
+
+	/** The NIF skeleton writer. */
+	private NifSkeletonWriterFilter skeletonWriter;
+
+	/**
+	 * The stream the NIF document is written to, when no output URI is set in
+	 * the parameters.
+	 */
+	private OutputStream nifOutputStream;
+
+	/**
+	 * The stream the NIF skeleton document is written to, when no skeleton
+	 * output URI is set in the parameters.
+	 */
+	private OutputStream skeletonOutputStream;
+
+	/** The NIF model of the last processed document. */
+	private Model nifModel;
+
+	/** The NIF skeleton model of the last processed document. */
+	private Model skeletonModel;
+
+	/** The document mime type */
+	private String mimeType;
+
+	/**
+	 * Constructor.
+	 */
+	public NifDualWriterStep() {
+		params = new NifParameters();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.okapi.common.pipeline.IPipelineStep#getName()
+	 */
+	@Override
+	public String getName() {
+
+		return "NIF and NIF Skeleton Writer";
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.okapi.common.pipeline.IPipelineStep#getDescription()
+	 */
+	@Override
+	public String getDescription() {
+
+		return "Generate a NIF file and a NIF skeleton file in one pass. Expects: filter events. Sends back: filter events.";
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.sf.okapi.common.pipeline.BasePipelineStep#getParameters()
+	 */
+	@Override
+	public IParameters getParameters() {
+		return params;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * net.sf.okapi.common.pipeline.BasePipelineStep#setParameters(net.sf.okapi
+	 * .common.IParameters)
+	 */
+	@Override
+	public void setParameters(IParameters params) {
+
+		if (!(params instanceof NifParameters)) {
+			throw new IllegalArgumentException("Received params of type "
+					+ params.getClass().getName()
+					+ ". Only NifParameters accepted.");
+		}
+		this.params = (NifParameters) params;
+		if (nifWriter != null) {
+			nifWriter.setParameters(params);
+		}
+		if (skeletonWriter != null) {
+			skeletonWriter.setParameters(getSkeletonParameters());
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * net.sf.okapi.common.pipeline.BasePipelineStep#handleEvent(net.sf.okapi
+	 * .common.Event)
+	 */
+	@Override
+	public Event handleEvent(Event event) {
+		switch (event.getEventType()) {
+
+		case NO_OP:
+			return event;
+		case START_DOCUMENT:
+			processStartDocument(event.getStartDocument());
+			break;
+		case TEXT_UNIT:
+			ITextUnit tu = event.getTextUnit();
+			// the NIF writer gets its own copy, taken before the skeleton
+			// writer handles the text unit.
+			ITextUnit nifTu = tu.clone();
+			skeletonWriter.processTextUnit(tu);
+			if (!(MimeTypeMapper.HTML_MIME_TYPE.equals(mimeType)
+					&& tu.getType() != null && tu.getType().startsWith("x-"))) {
+				nifWriter.processTextUnit(nifTu);
+			}
+			return event;
+		case END_DOCUMENT:
+			processEndDocument(event);
+			break;
+		case DOCUMENT_PART:
+			if (event.getResource().getSkeleton() != null) {
+				skeletonWriter.processDocumentPart((DocumentPart) event
+						.getResource());
+			}
+			break;
+		case END_GROUP:
+		case END_SUBFILTER:
+		case START_SUBDOCUMENT:
+		case END_SUBDOCUMENT:
+		case CUSTOM:
+		case CANCELED:
+		case START_BATCH:
+		case END_BATCH:
+		case MULTI_EVENT:
+		case PIPELINE_PARAMETERS:
+		case RAW_DOCUMENT:
+		case START_BATCH_ITEM:
+		case END_BATCH_ITEM:
+		case START_GROUP:
+		case START_SUBFILTER:
+			break;
+		default:
+			break;
+		}
+		return event;
+	}
+
+	/**
+	 * Creates both writer filters and then processes the start of the
+	 * document.
+	 *
+	 * @param startDocument
+	 *            the start document object
+	 */
+	private void processStartDocument(StartDocument startDocument) {
+		mimeType = startDocument.getMimeType();
+		nifModel = null;
+		skeletonModel = null;
+
+		nifWriter = new NifWriterFilter(params, startDocument.getLocale());
+		nifWriter.setOutput(nifOutputStream);
+		skeletonWriter = new NifSkeletonWriterFilter(getSkeletonParameters(),
+				startDocument.getLocale());
+		skeletonWriter.setOutput(skeletonOutputStream);
+
+		skeletonWriter.processStartDocument(startDocument);
+		nifWriter.processStartDocument(startDocument);
+	}
+
+	/**
+	 * Processes the end of the document, keeps both models and resets the
+	 * writers.
+	 *
+	 * @param event
+	 *            the end document event
+	 */
+	private void processEndDocument(Event event) {
+		if (skeletonWriter != null) {
+			skeletonWriter.processEndDocument(event.getEnding());
+			skeletonModel = skeletonWriter.getModel();
+			skeletonWriter = null;
+		}
+		if (nifWriter != null) {
+			nifWriter.processEndDocument();
+			nifModel = nifWriter.getModel();
+			nifWriter = null;
+		}
+	}
+
+	/**
+	 * Builds the parameters of the skeleton writer: the same as the ones of
+	 * this step, except for the output URI which is the skeleton output URI.
+	 *
+	 * @return the skeleton writer parameters.
+	 */
+	private NifParameters getSkeletonParameters() {
+		NifParameters skeletonParams = new NifParameters();
+		skeletonParams.setOutputURI(params.getSkeletonOutputURI());
+		skeletonParams.setOutBasePath(params.getOutBasePath());
+		skeletonParams.setNifLanguage(params.getNifLanguage());
+		skeletonParams.setNifURIPrefix(params.getNifURIPrefix());
+		return skeletonParams;
+	}
+
+	/**
+	 * Sets the stream the NIF document is written to. The stream is only used
+	 * when neither an output URI nor an output base path is set in the
+	 * parameters.
+	 *
+	 * @param outputStream
+	 *            the output stream.
+	 */
+	public void setNifOutputStream(OutputStream outputStream) {
+		this.nifOutputStream = outputStream;
+	}
+
+	/**
+	 * Sets the stream the NIF skeleton document is written to. The stream is
+	 * only used when neither a skeleton output URI nor an output base path is
+	 * set in the parameters.
+	 *
+	 * @param outputStream
+	 *            the output stream.
+	 */
+	public void setSkeletonOutputStream(OutputStream outputStream) {
+		this.skeletonOutputStream = outputStream;
+	}
+
+	/**
+	 * Gets the NIF model of the last processed document.
+	 *
+	 * @return the NIF model.
+	 */
+	public Model getNifModel() {
+		return nifModel;
+	}
+
+	/**
+	 * Gets the NIF skeleton model of the last processed document.
+	 *
+	 * @return the NIF skeleton model.
+	 */
+	public Model getSkeletonModel() {
+		return skeletonModel;
+	}
+
+}
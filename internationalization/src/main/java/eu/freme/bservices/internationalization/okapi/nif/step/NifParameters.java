@@ -37,6 +37,9 @@ public class NifParameters extends StringParameters {
 	/** The URI prefix to be used for NIF resources. */
 	public static final String NIF_URI_PREFIX = "nifUriPrefix";
 
+	/** The skeleton output file URI constant. */
+	public static final String SKELETON_OUTPUT_URI = "skeletonOutputURI";
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -46,6 +49,7 @@ public class NifParameters extends StringParameters {
 	public void reset() {
 		setOutputURI("");
 		setNifLanguage("");
+		setSkeletonOutputURI("");
 	}
 
 	/*
@@ -65,6 +69,8 @@ public class NifParameters extends StringParameters {
 				"NIF file directory.");
 		desc.add(NIF_URI_PREFIX, "NIF URI prefix",
 				"URI prefix to be used for resources in the NIF file.");
+		desc.add(SKELETON_OUTPUT_URI, "Path of the NIF skeleton file",
+				"NIF skeleton file Path");
 		return desc;
 	}
 
@@ -143,4 +149,24 @@ public class NifParameters extends StringParameters {
 	public void setNifURIPrefix(final String nifUriPrefix) {
 		setString(NIF_URI_PREFIX, nifUriPrefix);
 	}
+
+	/**
+	 * Gets the skeleton output file URI. It is only used by steps writing
+	 * both a NIF file and a NIF skeleton file.
+	 * 
+	 * @return the skeleton output file URI.
+	 */
+	public String getSkeletonOutputURI() {
+		return getString(SKELETON_OUTPUT_URI);
+	}
+
+	/**
+	 * Sets the skeleton output file URI.
+	 * 
+	 * @param skeletonOutputURI
+	 *            the skeleton output file URI.
+	 */
+	public void setSkeletonOutputURI(final String skeletonOutputURI) {
+		setString(SKELETON_OUTPUT_URI, skeletonOutputURI);
+	}
 }
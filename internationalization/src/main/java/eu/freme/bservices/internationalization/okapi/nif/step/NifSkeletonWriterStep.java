@@ -21,6 +21,8 @@ import net.sf.okapi.common.IParameters;
 import net.sf.okapi.common.pipeline.BasePipelineStep;
 import net.sf.okapi.common.resource.DocumentPart;
 
+import java.io.OutputStream;
+
 /**
  * This step can be used in the Okapi pipeline. It sends all events received
  * from the pipeline to the NIF skeleton writer filter.
@@ -33,6 +35,12 @@ public class NifSkeletonWriterStep extends BasePipelineStep {
 	/** The NIF skeleton writer. */
 	private NifSkeletonWriterFilter writer;
 
+	/**
+	 * The stream the NIF document is written to, when no output URI is set in
+	 * the parameters.
+	 */
+	private OutputStream outputStream;
+
 	/**
 	 * Constructor.
 	 */
@@ -88,6 +96,7 @@ public class NifSkeletonWriterStep extends BasePipelineStep {
 		case START_DOCUMENT:
 			writer = new NifSkeletonWriterFilter(params, event
 					.getStartDocument().getLocale());
+			writer.setOutput(outputStream);
 			writer.processStartDocument(event.getStartDocument());
 			break;
 
@@ -148,4 +157,16 @@ public class NifSkeletonWriterStep extends BasePipelineStep {
 
 	}
 
+	/**
+	 * Sets the stream the NIF skeleton document is written to. The stream is
+	 * only used when neither an output URI nor an output base path is set in
+	 * the parameters.
+	 * 
+	 * @param outputStream
+	 *            the output stream.
+	 */
+	public void setOutputStream(OutputStream outputStream) {
+		this.outputStream = outputStream;
+	}
+
 }
@@ -17,6 +17,7 @@
  */
 package eu.freme.bservices.internationalization.okapi.nif.step;
 
+import com.hp.hpl.jena.rdf.model.Model;
 import eu.freme.bservices.internationalization.okapi.nif.filter.NifWriterFilter;
 import net.sf.okapi.common.Event;
 import net.sf.okapi.common.EventType;
@@ -26,6 +27,8 @@ import net.sf.okapi.common.pipeline.BasePipelineStep;
 import net.sf.okapi.common.resource.ITextUnit;
 import net.sf.okapi.common.resource.StartDocument;
 
+import java.io.OutputStream;
+
 /**
  * This step can be used in the Okapi pipeline. It sends all events received
  * from the pipeline to the NIF writer filter.
@@ -37,9 +40,18 @@ public class NifWriterStep extends BasePipelineStep {
 
 	/** The NIF filter writer object. */
 	private NifWriterFilter writer;
+
+	/**
+	 * The stream the NIF document is written to, when no output URI is set in
+	 * the parameters.
+	 */
+	private OutputStream outputStream;
 	
 	/** The document mime type*/
 	private String mimeType;
+
+	/** The NIF model of the last processed document. */
+	private Model model;
 	
 	/**
 	 * Constructor.
@@ -178,6 +190,7 @@ public class NifWriterStep extends BasePipelineStep {
 	private void processEndDocument() {
 		if (writer != null) {
 			writer.processEndDocument();
+			model = writer.getModel();
 			writer = null;
 		}
 
@@ -192,9 +205,31 @@ public class NifWriterStep extends BasePipelineStep {
 	 */
 	private void processStartDocument(StartDocument startDocument) {
 		mimeType = startDocument.getMimeType();
+		model = null;
 		writer = new NifWriterFilter(params, startDocument.getLocale());
+		writer.setOutput(outputStream);
 		writer.processStartDocument(startDocument);
 	}
-	
+
+	/**
+	 * Sets the stream the NIF document is written to. The stream is
+	 * only used when neither an output URI nor an output base path is set in
+	 * the parameters.
+	 * 
+	 * @param outputStream
+	 *            the output stream.
+	 */
+	public void setOutputStream(OutputStream outputStream) {
+		this.outputStream = outputStream;
+	}
+
+	/**
+	 * Gets the NIF model of the last processed document.
+	 * 
+	 * @return the NIF model.
+	 */
+	public Model getModel() {
+		return model;
+	}
 
 }
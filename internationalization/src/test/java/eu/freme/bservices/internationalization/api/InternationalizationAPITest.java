@@ -21,6 +21,7 @@ import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.ModelFactory;
 import com.mashape.unirest.http.exceptions.UnirestException;
 import eu.freme.bservices.internationalization.okapi.nif.converter.ConversionException;
+import eu.freme.bservices.internationalization.okapi.nif.converter.NifConversionResult;
 import eu.freme.bservices.internationalization.okapi.nif.converter.UnsupportedMimeTypeException;
 import eu.freme.bservices.internationalization.okapi.nif.filter.RDFConstants;
 import eu.freme.bservices.testhelper.TestHelper;
@@ -33,6 +34,12 @@ import org.junit.Test;
 import org.springframework.context.ApplicationContext;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.assertTrue;
 
@@ -106,6 +113,42 @@ public class InternationalizationAPITest {
 		}
 	 }
 	
+	@Test
+	public void testEInternationalizationAPIConcurrentConversions()
+			throws Exception {
+
+		Reader expectedReader = new InputStreamReader(getClass()
+				.getResourceAsStream("/nifConversion/expected_text10.html.ttl"),
+				"UTF-8");
+		final Model expectedModel = ModelFactory.createDefaultModel();
+		expectedModel.read(expectedReader, null,
+				RDFConstants.RDFSerialization.TURTLE.toRDFLang());
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<Boolean>> results = new ArrayList<>();
+		for (int i = 0; i < 32; i++) {
+			results.add(executor.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() throws Exception {
+					InputStream is = getClass().getResourceAsStream(
+							"/nifConversion/src1/test10.html");
+					Reader nifReader = internationalizationAPI
+							.convertToTurtle(is,
+									InternationalizationAPI.MIME_TYPE_HTML);
+					Model model = ModelFactory.createDefaultModel();
+					model.read(nifReader, null,
+							RDFConstants.RDFSerialization.TURTLE.toRDFLang());
+					nifReader.close();
+					return model.isIsomorphicWith(expectedModel);
+				}
+			}));
+		}
+		executor.shutdown();
+		for (Future<Boolean> result : results) {
+			assertTrue(result.get());
+		}
+	}
+
 	//@Test
 	public void testEInternationalizationAPIXML() {
 
@@ -226,6 +269,17 @@ public class InternationalizationAPITest {
 	
 	public void testRoundTripping(String originalFilePath, String enrichmentPath)
 			throws ConversionException, IOException {
+		testRoundTripping(originalFilePath, enrichmentPath, null);
+	}
+
+	/**
+	 * Converts the original file to a skeleton and back with the enrichments.
+	 * When an expected file is given, the result must match it exactly,
+	 * otherwise it is printed.
+	 */
+	public void testRoundTripping(String originalFilePath,
+			String enrichmentPath, String expectedPath)
+			throws ConversionException, IOException {
 		// STEP 1: creation of the skeleton file: the TTL file with the context
 		// including markups.
 		InputStream originalFile = getClass().getResourceAsStream(
@@ -237,7 +291,8 @@ public class InternationalizationAPITest {
 		// STEP 2: save the skeleton file somewhere on the machine
 		BufferedReader br = new BufferedReader(skeletonReader);
 		File skeletonFile = File.createTempFile("freme-i18n-unittest", "");
-		FileWriter writer = new FileWriter(skeletonFile);
+		Writer writer = new OutputStreamWriter(new FileOutputStream(
+				skeletonFile), "UTF-8");
 		String line;
 		while ((line = br.readLine()) != null) {
 			// System.out.println(line);
@@ -252,11 +307,19 @@ public class InternationalizationAPITest {
 		InputStream turtle = getClass().getResourceAsStream(enrichmentPath);
 		Reader reader = internationalizationAPI.convertBack(skeletonStream,
 				turtle);
-		br = new BufferedReader(reader);
-		while ((line = br.readLine()) != null) {
-			System.out.println(line);
+		if (expectedPath != null) {
+			String expected = IOUtils.toString(
+					getClass().getResourceAsStream(expectedPath), "UTF-8");
+			Assert.assertEquals(expected, IOUtils.toString(reader));
+			reader.close();
+		} else {
+			br = new BufferedReader(reader);
+			while ((line = br.readLine()) != null) {
+				System.out.println(line);
+			}
+			br.close();
 		}
-		br.close();
+		skeletonStream.close();
 		skeletonFile.delete();
 	}
 
@@ -269,12 +332,13 @@ public class InternationalizationAPITest {
 
 	}
 
-	//@Test
+	@Test
 	public void testRoundtrippingMultipleValuesAttrs()
 			throws ConversionException, IOException {
 
 		testRoundTripping("/roundtripping/in-multAttrs.txt",
-				"/roundtripping/in-multAttrs-enriched.ttl");
+				"/roundtripping/in-multAttrs-enriched.ttl",
+				"/roundtripping/in-multAttrs-expected.html");
 	}
 
 	// @Test
@@ -306,11 +370,73 @@ public class InternationalizationAPITest {
 	// };
 	// }
 
-	//@Test
+	@Test
+	public void testConcurrentRoundtripping() throws Exception {
+
+		final byte[] skeleton = IOUtils.toByteArray(internationalizationAPI
+				.convertToTurtleWithMarkups(getClass().getResourceAsStream(
+						"/roundtripping/in-multAttrs.txt"),
+						InternationalizationAPI.MIME_TYPE_HTML), "UTF-8");
+		final byte[] enriched = IOUtils.toByteArray(getClass()
+				.getResourceAsStream("/roundtripping/in-multAttrs-enriched.ttl"));
+		byte[] expected = IOUtils.toByteArray(internationalizationAPI
+				.convertBack(new ByteArrayInputStream(skeleton),
+						new ByteArrayInputStream(enriched)), "UTF-8");
+
+		ExecutorService executor = Executors.newFixedThreadPool(16);
+		List<Future<byte[]>> results = new ArrayList<>();
+		for (int i = 0; i < 300; i++) {
+			results.add(executor.submit(new Callable<byte[]>() {
+				@Override
+				public byte[] call() throws Exception {
+					return IOUtils.toByteArray(internationalizationAPI
+							.convertBack(new ByteArrayInputStream(skeleton),
+									new ByteArrayInputStream(enriched)),
+							"UTF-8");
+				}
+			}));
+		}
+		executor.shutdown();
+		for (Future<byte[]> result : results) {
+			Assert.assertArrayEquals(expected, result.get());
+		}
+	}
+
+	@Test
+	public void testConvertToTurtleWithSkeleton() throws Exception {
+
+		String path = "/roundtripping/in-multAttrs.txt";
+		NifConversionResult result = internationalizationAPI
+				.convertToTurtleWithSkeleton(getClass().getResourceAsStream(path),
+						InternationalizationAPI.MIME_TYPE_HTML);
+
+		Model nif = ModelFactory.createDefaultModel();
+		nif.read(new InputStreamReader(result.getNif(), "UTF-8"), null,
+				RDFConstants.RDFSerialization.TURTLE.toRDFLang());
+		Model expectedNif = ModelFactory.createDefaultModel();
+		expectedNif.read(internationalizationAPI.convertToTurtle(getClass()
+				.getResourceAsStream(path),
+				InternationalizationAPI.MIME_TYPE_HTML), null,
+				RDFConstants.RDFSerialization.TURTLE.toRDFLang());
+		assertTrue(nif.isIsomorphicWith(expectedNif));
+
+		Model skeleton = ModelFactory.createDefaultModel();
+		skeleton.read(new InputStreamReader(result.getSkeleton(), "UTF-8"),
+				null, RDFConstants.RDFSerialization.TURTLE.toRDFLang());
+		Model expectedSkeleton = ModelFactory.createDefaultModel();
+		expectedSkeleton.read(internationalizationAPI
+				.convertToTurtleWithMarkups(getClass().getResourceAsStream(path),
+						InternationalizationAPI.MIME_TYPE_HTML), null,
+				RDFConstants.RDFSerialization.TURTLE.toRDFLang());
+		assertTrue(skeleton.isIsomorphicWith(expectedSkeleton));
+	}
+
+	@Test
 	public void testLongRoundtripping() throws IOException, ConversionException {
 
 		testRoundTripping("/roundtripping/vt-input-html.txt",
-				"/roundtripping/vt-input-turtle.txt");
+				"/roundtripping/vt-input-turtle.txt",
+				"/roundtripping/vt-input-expected.html");
 
 		// testRoundTripping("/roundtripping/long-html.html",
 		// "/roundtripping/long-html-enriched.ttl");
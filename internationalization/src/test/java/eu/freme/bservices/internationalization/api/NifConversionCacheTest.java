@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2015 Agro-Know, Deutsches Forschungszentrum für Künstliche Intelligenz, iMinds,
+ * Institut für Angewandte Informatik e. V. an der Universität Leipzig,
+ * Istituto Superiore Mario Boella, Tilde, Vistatec, WRIPL (http://freme-project.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.freme.bservices.internationalization.api;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+public class NifConversionCacheTest {
+
+	private NifConversionCache createCache(long maxSize, boolean offHeap) {
+		NifConversionCache cache = new NifConversionCache();
+		cache.enabled = true;
+		cache.maxSize = maxSize;
+		cache.offHeap = offHeap;
+		return cache;
+	}
+
+	@Test
+	public void testKey() {
+		NifConversionCache cache = createCache(100, false);
+		byte[] content = "<p>hello</p>".getBytes();
+		String key = cache.key("nif", content, "text/html", "http://a/");
+		assertEquals(key, cache.key("nif", content.clone(), "text/html",
+				"http://a/"));
+		assertNotEquals(key, cache.key("skeleton", content, "text/html",
+				"http://a/"));
+		assertNotEquals(key, cache.key("nif", content, "text/xml",
+				"http://a/"));
+		assertNotEquals(key, cache.key("nif", "<p>hallo</p>".getBytes(),
+				"text/html", "http://a/"));
+	}
+
+	@Test
+	public void testGetAndPut() throws IOException {
+		testGetAndPut(false);
+		testGetAndPut(true);
+	}
+
+	private void testGetAndPut(boolean offHeap) throws IOException {
+		NifConversionCache cache = createCache(100, offHeap);
+		byte[] data = "<a> <b> <c> .".getBytes();
+		assertNull(cache.get("a"));
+		cache.put("a", data);
+		assertArrayEquals(data,
+				NifConversionCache.toByteArray(cache.get("a")));
+		// each lookup reads the conversion from the beginning
+		assertArrayEquals(data,
+				NifConversionCache.toByteArray(cache.get("a")));
+		assertEquals(2, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(data.length, cache.getSize());
+	}
+
+	@Test
+	public void testParts() throws IOException {
+		testParts(false);
+		testParts(true);
+	}
+
+	private void testParts(boolean offHeap) throws IOException {
+		NifConversionCache cache = createCache(100, offHeap);
+		byte[] nif = "<a> <b> <c> .".getBytes();
+		byte[] skeleton = "<a> <b> <d> .".getBytes();
+		cache.put("a", nif, skeleton);
+		InputStream[] parts = cache.getParts("a");
+		assertEquals(2, parts.length);
+		assertArrayEquals(nif, NifConversionCache.toByteArray(parts[0]));
+		assertArrayEquals(skeleton, NifConversionCache.toByteArray(parts[1]));
+		assertEquals(1, cache.getHits());
+		assertEquals(nif.length + skeleton.length, cache.getSize());
+
+		// the parts are evicted together
+		cache.put("b", new byte[90]);
+		assertNull(cache.getParts("a"));
+		assertEquals(1, cache.getCount());
+	}
+
+	@Test
+	public void testEviction() {
+		NifConversionCache cache = createCache(100, false);
+		cache.put("a", new byte[40]);
+		cache.put("b", new byte[40]);
+		// a is now the most recently used entry
+		cache.get("a");
+		cache.put("c", new byte[40]);
+		assertNull(cache.get("b"));
+		assertEquals(2, cache.getCount());
+		assertEquals(80, cache.getSize());
+		assertEquals(1, cache.getEvictions());
+
+		// too large to be cached at all
+		cache.put("d", new byte[101]);
+		assertNull(cache.get("d"));
+		assertEquals(2, cache.getCount());
+	}
+}